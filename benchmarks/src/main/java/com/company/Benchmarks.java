@@ -0,0 +1,77 @@
+package com.company;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+
+/**
+ * Shared setup for the benchmarks.
+ */
+final class Benchmarks {
+    private static final String SAMPLE_MENU = "/canteen-menu-sample.pdf";
+
+    private Benchmarks() {
+    }
+
+    static ChatServer createChatServer() {
+        silenceStandardOutput();
+
+        return new ChatServer(new ServerConfig().set("journal.enabled", "false").set("canteen.enabled", "false").set("metrics.port", "0"));
+    }
+
+    /**
+     * The server logs every message to standard output, which would dominate the measurements.
+     */
+    static void silenceStandardOutput() {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    static String getSampleMenuUrl() {
+        URL url = Benchmarks.class.getResource(SAMPLE_MENU);
+
+        if (url == null) {
+            throw new IllegalStateException("The sample menu " + SAMPLE_MENU + " is missing.");
+        }
+
+        return url.toString();
+    }
+
+    /**
+     * Starts a server on a free port in a daemon thread and waits until it accepts connections.
+     */
+    static int startChatServer(ServerConfig config) throws IOException, InterruptedException {
+        int port;
+
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            port = serverSocket.getLocalPort();
+        }
+
+        ChatServer chatServer = new ChatServer(config.set("port", String.valueOf(port)).set("journal.enabled", "false").set("canteen.enabled", "false").set("metrics.port", "0"));
+
+        Thread thread = new Thread(() -> {
+            try {
+                chatServer.start();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, "chat-server");
+        thread.setDaemon(true);
+        thread.start();
+
+        for (int attempt = 0; ; attempt++) {
+            try (Socket ignored = new Socket("127.0.0.1", port)) {
+                return port;
+            } catch (IOException e) {
+                if (attempt == 100) {
+                    throw e;
+                }
+
+                Thread.sleep(50);
+            }
+        }
+    }
+}
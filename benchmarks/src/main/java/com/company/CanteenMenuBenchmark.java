@@ -0,0 +1,85 @@
+package com.company;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Loading the bundled sample menu PDF, and extracting the dishes from its text alone: the section scanner against the
+ * former split and regex based extraction, reproduced in legacyExtract. Run with "-prof gc" to compare allocations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CanteenMenuBenchmark {
+    private static final Pattern LEGACY_PATTERN = Pattern.compile("([a-zA-Zäöüß, ´()-]+[ ]?(\\r\\n|\\r|\\n))+(\\d,\\d\\d[ ]?€[ ]?(\\r\\n|\\r|\\n)?)+");
+    private static final String[][] LEGACY_SECTIONS = {
+            {"Hauptgericht", null},
+            {"Hauptgericht zur ", "Selbstentnahme "},
+            {"Frontcooking", null},
+            {"Hauptgang", null}
+    };
+
+    private String url;
+    private String text;
+
+    @Setup
+    public void setUp() throws IOException {
+        url = Benchmarks.getSampleMenuUrl();
+
+        try (InputStream inputStream = new URL(url).openStream(); PDDocument document = PDDocument.load(inputStream)) {
+            PDFTextStripper pdfTextStripper = new PDFTextStripper();
+            pdfTextStripper.setStartPage(1);
+            pdfTextStripper.setEndPage(1);
+            pdfTextStripper.setLineSeparator("\n");
+            text = pdfTextStripper.getText(document);
+        }
+    }
+
+    @Benchmark
+    public CanteenMenuHandler load() throws IOException {
+        return new CanteenMenuHandler(url, 42, 5000);
+    }
+
+    @Benchmark
+    public void legacyExtract(Blackhole blackhole) {
+        String pdfText = text.trim().replaceAll(" +", " ");
+
+        for (String[] section : LEGACY_SECTIONS) {
+            String contentString = pdfText.split(section[0], 2)[1].split("Zusatzstoffe und Allergene", 2)[0].trim();
+
+            if (section[1] != null) {
+                contentString = contentString.replace(section[1], "");
+            }
+
+            Matcher matcher = LEGACY_PATTERN.matcher(contentString);
+
+            while (matcher.find()) {
+                blackhole.consume(matcher.group().replace("\n", " ").replace("\r", " ").trim().replaceAll(" +", " "));
+            }
+        }
+    }
+
+    @Benchmark
+    public void extract(Blackhole blackhole) {
+        CanteenMenuScanner scanner = new CanteenMenuScanner();
+
+        scanner.write(text, 0, text.length());
+        scanner.close();
+
+        for (CanteenMenuScanner.Section section : CanteenMenuScanner.Section.values()) {
+            blackhole.consume(scanner.getDishes(section));
+        }
+    }
+}
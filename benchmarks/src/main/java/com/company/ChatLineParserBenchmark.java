@@ -0,0 +1,82 @@
+package com.company;
+
+import org.jsoup.Jsoup;
+import org.jsoup.safety.Whitelist;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares the hand-written command/mention scanner and the sanitizer fast path with the former regex and Jsoup based
+ * implementation, which is reproduced in the legacy* benchmarks.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChatLineParserBenchmark {
+    private static final String LEGACY_COMMAND_PATTERN = "\\\\(\\w+)(\\s([a-zA-Z0-9äöüÄÖÜ]+))?";
+    private static final String LEGACY_MENTION_PATTERN = "(@(\\w+))+";
+
+    @Param({"plain", "markup"})
+    public String kind;
+
+    private String command;
+    private String message;
+    private Whitelist whitelist;
+    private HtmlSanitizer htmlSanitizer;
+
+    @Setup
+    public void setUp() {
+        command = "\\setname Bernd";
+        message = kind.equals("plain")
+                ? "Hey @Anonym12 and @Bernd, lunch at 12 today? The canteen has Käsespätzle again"
+                : "Hey @Anonym12 look at <a href=\"http://example.com\">this</a> & tell @Bernd";
+        whitelist = Whitelist.none();
+        htmlSanitizer = new HtmlSanitizer(whitelist);
+    }
+
+    @Benchmark
+    public void legacyCommand(Blackhole blackhole) {
+        Matcher matcher = Pattern.compile(LEGACY_COMMAND_PATTERN).matcher(command);
+
+        if (matcher.find()) {
+            blackhole.consume(matcher.group(1));
+            blackhole.consume(matcher.group(3));
+        }
+    }
+
+    @Benchmark
+    public void command(Blackhole blackhole) {
+        ChatLineParser.ParsedCommand parsedCommand = ChatLineParser.parseCommand(command);
+
+        blackhole.consume(parsedCommand.getName());
+        blackhole.consume(parsedCommand.getArgument());
+    }
+
+    @Benchmark
+    public void legacyMessage(Blackhole blackhole) {
+        String cleanContent = Jsoup.clean(message, whitelist);
+        Matcher matcher = Pattern.compile(LEGACY_MENTION_PATTERN).matcher(cleanContent);
+
+        while (matcher.find()) {
+            blackhole.consume(matcher.group(2));
+        }
+
+        blackhole.consume(cleanContent);
+    }
+
+    @Benchmark
+    public void message(Blackhole blackhole) {
+        String cleanContent = htmlSanitizer.clean(message);
+
+        ChatLineParser.forEachMention(cleanContent, blackhole::consume);
+
+        blackhole.consume(cleanContent);
+    }
+}
@@ -0,0 +1,80 @@
+package com.company;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from writing a chat line on one loopback connection until the broadcast arrives on another, with a real server
+ * running the selected transport in the benchmark's JVM.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EndToEndLatencyBenchmark {
+    @Param({"blocking", "virtual", "nio"})
+    public String transport;
+
+    private Socket sender;
+    private Socket receiver;
+    private PrintWriter senderWriter;
+    private BufferedReader senderReader;
+    private BufferedReader receiverReader;
+    private long counter;
+
+    @Setup
+    public void setUp() throws IOException, InterruptedException {
+        Benchmarks.silenceStandardOutput();
+
+        int port = Benchmarks.startChatServer(new ServerConfig()
+                .set("transport", transport)
+                .set("ratelimit.session.rate", "0")
+                .set("ratelimit.ip.rate", "0")
+                .set("ratelimit.global.rate", "0"));
+
+        sender = new Socket("127.0.0.1", port);
+        receiver = new Socket("127.0.0.1", port);
+
+        senderWriter = new PrintWriter(new OutputStreamWriter(sender.getOutputStream(), StandardCharsets.UTF_8), true);
+        senderReader = new BufferedReader(new InputStreamReader(sender.getInputStream(), StandardCharsets.UTF_8));
+        receiverReader = new BufferedReader(new InputStreamReader(receiver.getInputStream(), StandardCharsets.UTF_8));
+
+        // let the greetings and join announcements arrive before measuring
+        post(senderWriter, receiverReader, "warmup");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        sender.close();
+        receiver.close();
+    }
+
+    @Benchmark
+    public void postToDelivery() throws IOException {
+        post(senderWriter, receiverReader, "latency probe " + counter++);
+
+        // keep the sender's socket buffer from filling up with its own echoes
+        while (senderReader.ready()) {
+            senderReader.readLine();
+        }
+    }
+
+    private static void post(PrintWriter writer, BufferedReader reader, String content) throws IOException {
+        writer.println(content);
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.endsWith(content)) {
+                return;
+            }
+        }
+
+        throw new EOFException("The server closed the connection.");
+    }
+}
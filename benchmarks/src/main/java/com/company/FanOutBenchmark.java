@@ -0,0 +1,42 @@
+package com.company;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Posting a message to the server and queueing it for every connected in-memory session, by one poster and by more
+ * posters than most machines have cores.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FanOutBenchmark {
+    @Param({"10", "100", "1000"})
+    public int sessions;
+
+    private ChatServer chatServer;
+    private User author;
+
+    @Setup
+    public void setUp() {
+        chatServer = Benchmarks.createChatServer();
+        InMemoryClientHandler.connect(chatServer, sessions);
+
+        author = chatServer.getSessionRegistry().getSessions().iterator().next().getUser();
+    }
+
+    @Benchmark
+    public void addMessage() {
+        chatServer.addMessage(new Message(author, "Who wants to join for lunch at twelve?"));
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void addMessageConcurrently() {
+        chatServer.addMessage(new Message(author, "Who wants to join for lunch at twelve?"));
+    }
+}
@@ -0,0 +1,48 @@
+package com.company;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handling of one received chat line: sanitizing, mention lookup and appending to the message log, with the mentioned
+ * user as the only other session.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HandleMessageBenchmark {
+    @Param({"plain", "mention", "markup"})
+    public String kind;
+
+    private InMemoryClientHandler clientHandler;
+    private String line;
+
+    @Setup
+    public void setUp() {
+        ChatServer chatServer = Benchmarks.createChatServer();
+        InMemoryClientHandler.connect(chatServer, 2);
+
+        clientHandler = (InMemoryClientHandler) chatServer.getSessionRegistry().getSessions().iterator().next();
+
+        switch (kind) {
+            case "plain":
+                line = "Who wants to join for lunch at twelve? The canteen has Käsespätzle again.";
+                break;
+            case "mention":
+                line = "@User1 do you want to join for lunch at twelve? @User1 @Nobody";
+                break;
+            default:
+                line = "@User1 look at <a href=\"http://example.com\">this</a> & <b>that</b>";
+                break;
+        }
+    }
+
+    @Benchmark
+    public void handleMessage() {
+        clientHandler.handleMessage(line);
+    }
+}
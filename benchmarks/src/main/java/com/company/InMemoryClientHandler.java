@@ -0,0 +1,43 @@
+package com.company;
+
+/**
+ * Client handler without a socket. Queued frames are drained right away on the writing thread and only counted, so
+ * benchmarks measure the server's own work per recipient.
+ */
+public class InMemoryClientHandler extends ClientHandler {
+    private long writtenBytes;
+
+    public InMemoryClientHandler(ChatServer chatServer, User user) {
+        super(chatServer, user);
+    }
+
+    /**
+     * Registers the given number of users, each with its own in-memory session.
+     */
+    public static void connect(ChatServer chatServer, int numberOfSessions) {
+        for (int i = 0; i < numberOfSessions; i++) {
+            User user = new User("User" + i, "10.0." + (i / 256) + "." + (i % 256), "red");
+
+            chatServer.getSessionRegistry().addUser(user);
+            chatServer.addClientHandler(new InMemoryClientHandler(chatServer, user));
+        }
+    }
+
+    @Override
+    protected void scheduleFlush() {
+        OutboundQueue outboundQueue = getOutboundQueue();
+        byte[] frame;
+
+        while ((frame = outboundQueue.poll()) != null) {
+            writtenBytes += frame.length;
+        }
+    }
+
+    @Override
+    protected void close() {
+    }
+
+    public long getWrittenBytes() {
+        return writtenBytes;
+    }
+}
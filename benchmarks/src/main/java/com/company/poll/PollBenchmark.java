@@ -0,0 +1,47 @@
+package com.company.poll;
+
+import com.company.User;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering the tally of a poll.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PollBenchmark {
+    @Param({"5", "20"})
+    public int options;
+
+    @Param({"100", "1000"})
+    public int votes;
+
+    private Poll poll;
+
+    @Setup
+    public void setUp() {
+        List<String> optionList = new ArrayList<>();
+
+        for (int i = 0; i < options; i++) {
+            optionList.add("Option " + i);
+        }
+
+        poll = new Poll("Benchmark", new User("Creator", "10.0.0.1", "red"), optionList);
+
+        for (int i = 0; i < votes; i++) {
+            poll.addVote(new Vote(new User("Voter" + i, "10.1." + (i / 256) + "." + (i % 256), "red"), i % options));
+        }
+    }
+
+    @Benchmark
+    public String tally() {
+        return poll.toString();
+    }
+}
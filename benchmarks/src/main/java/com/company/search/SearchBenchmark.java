@@ -0,0 +1,83 @@
+package com.company.search;
+
+import com.company.Message;
+import com.company.User;
+import com.company.history.MessageLog;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searching a full log of a million messages for the ten newest matches, with a rare word, a common word, words
+ * that only occur together now and then, and two authors that never occur together.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+    private static final String[] WORDS = {
+            "lunch", "canteen", "meeting", "build", "release", "coffee", "deploy", "review", "ticket", "today",
+            "tomorrow", "link", "docs", "wiki", "server", "client", "please", "thanks", "anyone", "broken"
+    };
+
+    @Param({"rare", "common", "combined", "none"})
+    public String query;
+
+    private SearchIndex searchIndex;
+    private String queryText;
+
+    @Setup
+    public void setUp() {
+        int numberOfMessages = 1_000_000;
+        MessageLog messageLog = new MessageLog(numberOfMessages);
+        searchIndex = new SearchIndex(messageLog);
+        Random random = new Random(42);
+        User[] users = new User[50];
+
+        for (int i = 0; i < users.length; i++) {
+            users[i] = new User("User" + i, "10.0.0." + i, "red");
+        }
+
+        for (int i = 0; i < numberOfMessages; i++) {
+            StringBuilder content = new StringBuilder();
+
+            for (int j = 0; j < 8; j++) {
+                content.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+
+            if (i % 100_000 == 0) {
+                content.append("https://wiki.example.com/Zeitplan");
+            }
+
+            Message message = new Message(users[random.nextInt(users.length)], content.toString());
+            messageLog.append(message);
+        }
+
+        searchIndex.update();
+
+        switch (query) {
+            case "rare":
+                queryText = "zeitplan";
+                break;
+            case "common":
+                queryText = "lunch";
+                break;
+            case "none":
+                queryText = "user7 user8";
+                break;
+            default:
+                queryText = "broken deploy user7";
+                break;
+        }
+    }
+
+    @Benchmark
+    public List<Message> search() {
+        return searchIndex.search(queryText, 10);
+    }
+}
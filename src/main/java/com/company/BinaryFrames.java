@@ -0,0 +1,57 @@
+package com.company;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encoding of the binary wire format a client can switch to with "\protocol binary". Every frame is
+ * <pre>
+ *   length (int, number of bytes that follow) | type (byte) | sequence (long) | user id (long) |
+ *   color index (byte) | epoch milli (long) | UTF-8 payload
+ * </pre>
+ * The sequence is the message's position in its room's log (clients can pass the last one they've seen to
+ * "\resume" after reconnecting) and -1 for everything else. The user id is 0 and the color index {@value #NO_COLOR}
+ * for frames without an author. Authors are announced with a {@link #USER} frame (payload: name) before their first
+ * message and again after they were renamed, so messages don't repeat the name. The payload of a (mention) message is
+ * the room name, a line feed and the content; the room name is empty for the default room. A {@link #PING} frame (empty
+ * payload) is sent to idle clients, which answer with the line "\pong".
+ */
+public final class BinaryFrames {
+    public static final byte NOTICE = 0;
+    public static final byte MESSAGE = 1;
+    public static final byte MENTION = 2;
+    public static final byte PRIVATE_RECEIVED = 3;
+    public static final byte PRIVATE_SENT = 4;
+    public static final byte USER = 5;
+    public static final byte PING = 6;
+
+    public static final int NO_COLOR = 255;
+
+    private static final int HEADER_SIZE = 4 + 1 + 8 + 8 + 1 + 8;
+
+    private BinaryFrames() {
+    }
+
+    public static byte[] encode(byte type, long sequence, long userId, int colorIndex, long timeMillis, String payload) {
+        byte[] payloadBytes = payload.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + payloadBytes.length);
+
+        frame.putInt(HEADER_SIZE - 4 + payloadBytes.length);
+        frame.put(type);
+        frame.putLong(sequence);
+        frame.putLong(userId);
+        frame.put((byte) colorIndex);
+        frame.putLong(timeMillis);
+        frame.put(payloadBytes);
+
+        return frame.array();
+    }
+
+    public static byte[] encodeNotice(String notice) {
+        return encode(NOTICE, -1, 0, NO_COLOR, System.currentTimeMillis(), notice);
+    }
+
+    public static byte[] encodeUser(User user) {
+        return encode(USER, -1, user.getId(), user.getColorIndex(), System.currentTimeMillis(), user.getName());
+    }
+}
@@ -0,0 +1,93 @@
+package com.company;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.IsoFields;
+import java.util.*;
+
+/**
+ * Immutable menu of one calendar week (ISO week, as printed on the canteen's "KW" plans). The answers of the
+ * canteen command are rendered once when the menu is created, so serving them is just a lookup.
+ */
+public class CanteenMenu {
+    private final int year;
+    private final int week;
+    private final Map<DayOfWeek, List<String>> dishes;
+    private final Map<DayOfWeek, String> todayResponses;
+    private final Map<DayOfWeek, String> dayResponses;
+
+    public CanteenMenu(int year, int week, Map<DayOfWeek, List<String>> dishes) {
+        this.year = year;
+        this.week = week;
+
+        this.dishes = new EnumMap<>(DayOfWeek.class);
+        todayResponses = new EnumMap<>(DayOfWeek.class);
+        dayResponses = new EnumMap<>(DayOfWeek.class);
+
+        for (DayOfWeek dayOfWeek : DayOfWeek.values()) {
+            List<String> menu = Collections.unmodifiableList(new ArrayList<>(dishes.getOrDefault(dayOfWeek, Collections.emptyList())));
+
+            this.dishes.put(dayOfWeek, menu);
+            todayResponses.put(dayOfWeek, "<b>Today's canteen menu: \n" + String.join("\n", menu) + "</b>");
+            dayResponses.put(dayOfWeek, "<b>" + StringUtils.capitalize(dayOfWeek.name().toLowerCase()) + "'s canteen menu: \n" + String.join("\n", menu) + "</b>");
+        }
+    }
+
+    /**
+     * Creates the menu of the given week from a parsed menu PDF.
+     */
+    public static CanteenMenu of(int year, int week, CanteenMenuHandler canteenMenuHandler) {
+        Map<DayOfWeek, List<String>> dishes = new EnumMap<>(DayOfWeek.class);
+
+        for (DayOfWeek dayOfWeek : DayOfWeek.values()) {
+            dishes.put(dayOfWeek, canteenMenuHandler.getMenuOfDay(dayOfWeek));
+        }
+
+        return new CanteenMenu(year, week, dishes);
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    public int getWeek() {
+        return week;
+    }
+
+    public boolean isFor(LocalDate date) {
+        return date.get(IsoFields.WEEK_BASED_YEAR) == year && date.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR) == week;
+    }
+
+    /**
+     * Returns true if no day has any dishes, e.g. because the PDF didn't contain the expected table.
+     */
+    public boolean isEmpty() {
+        for (List<String> dishesOfDay : dishes.values()) {
+            if (dishesOfDay != null && !dishesOfDay.isEmpty()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public List<String> getMenuOfDay(DayOfWeek dayOfWeek) {
+        return dishes.get(dayOfWeek);
+    }
+
+    /**
+     * Returns the answer to "\canteen" on the given day.
+     */
+    public String getTodayResponse(DayOfWeek dayOfWeek) {
+        return todayResponses.get(dayOfWeek);
+    }
+
+    /**
+     * Returns the answer to "\canteen n" for the given day.
+     */
+    public String getDayResponse(DayOfWeek dayOfWeek) {
+        return dayResponses.get(dayOfWeek);
+    }
+}
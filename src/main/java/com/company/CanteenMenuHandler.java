@@ -4,49 +4,62 @@ import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.text.PDFTextStripper;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
-import java.text.DecimalFormat;
+import java.net.URLConnection;
 import java.time.DayOfWeek;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class CanteenMenuHandler {
     private String url;
-    private Pattern pattern;
     private List<String> hauptgerichte, hauptgerichteSelbstentnahme, frontcookings, hauptgaenge;
     private int latestWeekOfYear;
+    private int timeoutMillis;
 
-    public CanteenMenuHandler(String url, int weekOfYear) throws IOException {
+    /**
+     * Downloads and parses the menu. Connecting and every read give up after timeoutMillis, so a hanging server can't
+     * block the caller for longer than that per read.
+     */
+    public CanteenMenuHandler(String url, int weekOfYear, int timeoutMillis) throws IOException {
         this.url = url;
         this.latestWeekOfYear = weekOfYear;
-
-        pattern = Pattern.compile("([a-zA-Zäöüß, ´()-]+[ ]?(\\r\\n|\\r|\\n))+(\\d,\\d\\d[ ]?€[ ]?(\\r\\n|\\r|\\n)?)+");
-
-        hauptgerichte = new ArrayList<>();
-        hauptgerichteSelbstentnahme = new ArrayList<>();
-        frontcookings = new ArrayList<>();
-        hauptgaenge = new ArrayList<>();
+        this.timeoutMillis = timeoutMillis;
 
         load();
     }
 
+    /**
+     * Streams the text of the first page straight into a {@link CanteenMenuScanner}, which picks out the dishes of
+     * every section in the same pass.
+     */
     private void load() throws IOException {
-        URL file = new URL(url);
+        CanteenMenuScanner scanner = new CanteenMenuScanner();
+
+        URLConnection connection = new URL(url).openConnection();
+        connection.setConnectTimeout(timeoutMillis);
+        connection.setReadTimeout(timeoutMillis);
+
+        try (InputStream inputStream = connection.getInputStream(); PDDocument document = PDDocument.load(inputStream)) {
+            PDFTextStripper pdfTextStripper = new PDFTextStripper();
+            pdfTextStripper.setStartPage(1);
+            pdfTextStripper.setEndPage(1);
+            pdfTextStripper.setLineSeparator("\n");
+            pdfTextStripper.writeText(document, scanner);
+        }
 
-        PDDocument document = PDDocument.load(file.openStream());
-        PDFTextStripper pdfTextStripper = new PDFTextStripper();
-        pdfTextStripper.setStartPage(1);
-        pdfTextStripper.setEndPage(1);
-        String text = pdfTextStripper.getText(document).trim().replaceAll(" +", " ");
+        scanner.close();
 
-        document.close();
+        for (CanteenMenuScanner.Section section : CanteenMenuScanner.Section.values()) {
+            if (!scanner.hasSection(section)) {
+                throw new IOException("The canteen menu '" + url + "' has no " + section.name().toLowerCase() + " section.");
+            }
+        }
 
-        extractHauptgerichte(text);
-        extractHauptgerichteSelbstentnahme(text);
-        extractFrontcookings(text);
-        extractHauptgaenge(text);
+        hauptgerichte = scanner.getDishes(CanteenMenuScanner.Section.HAUPTGERICHT);
+        hauptgerichteSelbstentnahme = scanner.getDishes(CanteenMenuScanner.Section.HAUPTGERICHT_SELBSTENTNAHME);
+        frontcookings = scanner.getDishes(CanteenMenuScanner.Section.FRONTCOOKING);
+        hauptgaenge = scanner.getDishes(CanteenMenuScanner.Section.HAUPTGANG);
     }
 
     public boolean isRecent(int currentWeekOfYear) {
@@ -77,50 +90,6 @@ public class CanteenMenuHandler {
         return menu;
     }
 
-    private void extractHauptgerichte(String pdfText) {
-        String contentString = pdfText.split("Hauptgericht", 2)[1].split("Zusatzstoffe und Allergene", 2)[0].trim();
-
-        Matcher matcher = pattern.matcher(contentString);
-
-        while (matcher.find()) {
-            hauptgerichte.add(cleanString(matcher.group()));
-        }
-    }
-
-    private void extractHauptgerichteSelbstentnahme(String pdfText) {
-        String contentString = pdfText.split("Hauptgericht zur ", 2)[1].split("Zusatzstoffe und Allergene", 2)[0].trim().replace("Selbstentnahme ", "");
-
-        Matcher matcher = pattern.matcher(contentString);
-
-        while (matcher.find()) {
-            hauptgerichteSelbstentnahme.add(cleanString(matcher.group()));
-        }
-    }
-
-    private void extractFrontcookings(String pdfText) {
-        String contentString = pdfText.split("Frontcooking", 2)[1].split("Zusatzstoffe und Allergene", 2)[0].trim();
-
-        Matcher matcher = pattern.matcher(contentString);
-
-        while (matcher.find()) {
-            frontcookings.add(cleanString(matcher.group()));
-        }
-    }
-
-    private void extractHauptgaenge(String pdfText) {
-        String contentString = pdfText.split("Hauptgang", 2)[1].split("Zusatzstoffe und Allergene", 2)[0].trim();
-
-        Matcher matcher = pattern.matcher(contentString);
-
-        while (matcher.find()) {
-            hauptgaenge.add(cleanString(matcher.group()));
-        }
-    }
-
-    private String cleanString(String string) {
-        return string.replace("\n", " ").replace("\r", " ").trim().replaceAll(" +", " ");
-    }
-
     enum WeekDay {
         MONDAY,
         TUESDAY,
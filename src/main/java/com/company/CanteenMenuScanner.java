@@ -0,0 +1,371 @@
+package com.company;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Extracts the dishes from the text of a canteen menu while it is being written, so the page text is never held as a
+ * whole. The text is read line by line; runs of spaces are collapsed on the fly.
+ * <p>
+ * A section starts after the first occurrence of its marker and ends at the next "Zusatzstoffe und Allergene". Inside a
+ * section a dish is one or more lines that only consist of letters, spaces and ",´()-", directly followed by one or
+ * more prices ("4,50 €") at the start of the next line. Everything else separates dishes. This is the same grammar the
+ * former regular expression implemented, evaluated as a state machine per section.
+ */
+public class CanteenMenuScanner extends Writer {
+    private static final String END_MARKER = "Zusatzstoffe und Allergene";
+
+    private final StringBuilder line;
+    private final SectionScanner[] sections;
+    private char previousChar;
+
+    public CanteenMenuScanner() {
+        line = new StringBuilder(256);
+        sections = new SectionScanner[Section.values().length];
+
+        for (Section section : Section.values()) {
+            sections[section.ordinal()] = new SectionScanner(section);
+        }
+    }
+
+    /**
+     * Returns the dishes of the section in the order they are listed, one per weekday.
+     */
+    public List<String> getDishes(Section section) {
+        return Collections.unmodifiableList(sections[section.ordinal()].dishes);
+    }
+
+    /**
+     * Returns true if the section's marker was found.
+     */
+    public boolean hasSection(Section section) {
+        return sections[section.ordinal()].state != SectionState.NOT_STARTED;
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            write(chars[i]);
+        }
+    }
+
+    @Override
+    public void write(String string, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            write(string.charAt(i));
+        }
+    }
+
+    @Override
+    public void write(int c) {
+        write((char) c);
+    }
+
+    private void write(char c) {
+        if (c == '\n' || c == '\r') {
+            if (c == '\r' || previousChar != '\r') {
+                endLine(true);
+            }
+        } else if (c != ' ' || line.length() == 0 || line.charAt(line.length() - 1) != ' ') {
+            line.append(c);
+        }
+
+        previousChar = c;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * Ends the last line and all sections that are still open.
+     */
+    @Override
+    public void close() {
+        endLine(false);
+
+        for (SectionScanner section : sections) {
+            section.finish();
+        }
+    }
+
+    private void endLine(boolean hasNewline) {
+        for (SectionScanner section : sections) {
+            section.scanLine(line, hasNewline);
+        }
+
+        line.setLength(0);
+    }
+
+    private static boolean isDishCharacter(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == ' ' || c == ',' || c == '-' || c == '(' || c == ')'
+                || c == 'ä' || c == 'ö' || c == 'ü' || c == 'ß' || c == '´';
+    }
+
+    private static boolean isDigit(CharSequence text, int index, int end) {
+        return index < end && text.charAt(index) >= '0' && text.charAt(index) <= '9';
+    }
+
+    /**
+     * Returns the end of the price "d,dd €" (with optional spaces before and after the euro sign) that starts at the
+     * index, or -1 if there is none.
+     */
+    private static int findPriceEnd(CharSequence text, int index, int end) {
+        if (!isDigit(text, index, end) || index + 1 >= end || text.charAt(index + 1) != ','
+                || !isDigit(text, index + 2, end) || !isDigit(text, index + 3, end)) {
+            return -1;
+        }
+
+        int i = index + 4;
+
+        if (i < end && text.charAt(i) == ' ') {
+            i++;
+        }
+
+        if (i >= end || text.charAt(i) != '€') {
+            return -1;
+        }
+
+        i++;
+
+        if (i < end && text.charAt(i) == ' ') {
+            i++;
+        }
+
+        return i;
+    }
+
+    private static int indexOf(CharSequence text, String string, int from) {
+        int last = text.length() - string.length();
+        char first = string.charAt(0);
+
+        for (int i = from; i <= last; i++) {
+            if (text.charAt(i) == first && regionMatches(text, i, string)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static boolean regionMatches(CharSequence text, int index, String string) {
+        for (int j = 1; j < string.length(); j++) {
+            if (text.charAt(index + j) != string.charAt(j)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public enum Section {
+        HAUPTGERICHT("Hauptgericht", null),
+        HAUPTGERICHT_SELBSTENTNAHME("Hauptgericht zur ", "Selbstentnahme "),
+        FRONTCOOKING("Frontcooking", null),
+        HAUPTGANG("Hauptgang", null);
+
+        private final String marker;
+        private final String ignoredText;
+
+        Section(String marker, String ignoredText) {
+            this.marker = marker;
+            this.ignoredText = ignoredText;
+        }
+    }
+
+    private enum SectionState {
+        NOT_STARTED,
+        ACTIVE,
+        DONE
+    }
+
+    private static class SectionScanner {
+        private final Section section;
+        private final List<String> dishes;
+        private final StringBuilder name;
+        private final StringBuilder dish;
+        private final StringBuilder filteredLine;
+        private SectionState state;
+        private boolean isAtContentStart;
+        private boolean hasName;
+        private boolean isDishOpen;
+
+        private SectionScanner(Section section) {
+            this.section = section;
+
+            dishes = new ArrayList<>();
+            name = new StringBuilder(64);
+            dish = new StringBuilder(64);
+            filteredLine = section.ignoredText == null ? null : new StringBuilder(256);
+            state = SectionState.NOT_STARTED;
+        }
+
+        private void scanLine(CharSequence line, boolean hasNewline) {
+            int start = 0;
+
+            if (state == SectionState.NOT_STARTED) {
+                int markerIndex = indexOf(line, section.marker, 0);
+
+                if (markerIndex < 0) {
+                    return;
+                }
+
+                state = SectionState.ACTIVE;
+                isAtContentStart = true;
+                start = markerIndex + section.marker.length();
+            } else if (state == SectionState.DONE) {
+                return;
+            }
+
+            int endIndex = indexOf(line, END_MARKER, start);
+
+            if (endIndex >= 0) {
+                scanContent(line, start, endIndex, false);
+                finish();
+            } else {
+                scanContent(line, start, line.length(), hasNewline);
+            }
+        }
+
+        private void finish() {
+            if (state == SectionState.ACTIVE) {
+                if (isDishOpen) {
+                    addDish();
+                }
+
+                state = SectionState.DONE;
+            }
+        }
+
+        private void scanContent(CharSequence line, int start, int end, boolean hasNewline) {
+            if (isAtContentStart) {
+                // whitespace in front of the first dish is ignored, blank lines included
+                while (start < end && line.charAt(start) == ' ') {
+                    start++;
+                }
+
+                if (start == end) {
+                    return;
+                }
+
+                isAtContentStart = false;
+            }
+
+            if (filteredLine != null) {
+                // the section header may run into the first dish, e.g. "Hauptgericht zur Selbstentnahme Gemüsecurry"
+                filteredLine.setLength(0);
+
+                for (int i = start; i < end; i++) {
+                    if (line.charAt(i) == section.ignoredText.charAt(0) && i + section.ignoredText.length() <= end
+                            && regionMatches(line, i, section.ignoredText)) {
+                        i += section.ignoredText.length() - 1;
+                    } else {
+                        filteredLine.append(line.charAt(i));
+                    }
+                }
+
+                scan(filteredLine, 0, filteredLine.length(), hasNewline);
+            } else {
+                scan(line, start, end, hasNewline);
+            }
+        }
+
+        private void scan(CharSequence line, int start, int end, boolean hasNewline) {
+            int index = start;
+
+            if ((isDishOpen || hasName) && findPriceEnd(line, index, end) >= 0) {
+                if (!isDishOpen) {
+                    dish.setLength(0);
+                    append(dish, name, 0, name.length());
+                    isDishOpen = true;
+                }
+
+                int pricesStart = index;
+                int priceEnd;
+
+                while ((priceEnd = findPriceEnd(line, index, end)) >= 0) {
+                    index = priceEnd;
+                }
+
+                append(dish, line, pricesStart, index);
+
+                hasName = false;
+                name.setLength(0);
+
+                if (index == end && hasNewline) {
+                    // more prices may follow on the next line
+                    return;
+                }
+
+                addDish();
+            } else if (isDishOpen) {
+                addDish();
+            }
+
+            if (hasName && index == start && isDishLine(line, index, end) && hasNewline) {
+                append(name, line, index, end);
+                return;
+            }
+
+            hasName = false;
+            name.setLength(0);
+
+            if (!hasNewline) {
+                return;
+            }
+
+            int nameStart = end;
+
+            while (nameStart > index && isDishCharacter(line.charAt(nameStart - 1))) {
+                nameStart--;
+            }
+
+            if (nameStart < end) {
+                append(name, line, nameStart, end);
+                hasName = true;
+            }
+        }
+
+        private void addDish() {
+            dishes.add(dish.toString());
+            dish.setLength(0);
+            isDishOpen = false;
+        }
+
+        private static boolean isDishLine(CharSequence line, int start, int end) {
+            if (start == end) {
+                return false;
+            }
+
+            for (int i = start; i < end; i++) {
+                if (!isDishCharacter(line.charAt(i))) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Appends the text with whitespace collapsed to single spaces and without leading or trailing spaces.
+         */
+        private static void append(StringBuilder target, CharSequence text, int start, int end) {
+            for (int i = start; i < end; i++) {
+                char c = text.charAt(i);
+
+                if (c == ' ') {
+                    continue;
+                }
+
+                if (target.length() > 0 && (i == start || text.charAt(i - 1) == ' ')) {
+                    target.append(' ');
+                }
+
+                target.append(c);
+            }
+        }
+    }
+}
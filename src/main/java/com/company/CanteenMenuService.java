@@ -0,0 +1,274 @@
+package com.company;
+
+import com.company.logging.ServerLog;
+import com.company.metrics.ServerMetrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.text.DecimalFormat;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.IsoFields;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the canteen menus of the current and the upcoming week. Downloading and parsing the PDF happens on a background
+ * thread only: the menus are refreshed periodically (the upcoming week's one as soon as it is published), and the
+ * command thread just reads the latest immutable {@link CanteenMenu}. Fetched menus are written to a cache file, so a
+ * restarted server can answer right away. After a week's menu couldn't be fetched (not published yet or the download
+ * failed), it isn't tried again before the retry delay has passed, no matter how often it is asked for.
+ * <p>
+ * The URL may contain the placeholders {week} (two digits) and {year}; a local "file:" URL works as well.
+ */
+public class CanteenMenuService {
+    public static final String DEFAULT_URL = "http://boeblingen.eurest.de/assets/technologie-and-businesspark-boeblingen/restaurant-boeblingen/Microsite/Restaurant-ESS-36-Speiseplan-KW-{week}-{year}.pdf";
+
+    private static final ZoneId ZONE = ZoneId.of("Europe/Paris");
+
+    private final String urlTemplate;
+    private final Path cacheFile;
+    private final ServerMetrics metrics;
+    private final ServerLog log;
+    private final ScheduledExecutorService fetcher;
+    private final AtomicBoolean isRefreshPending;
+    private final long retryDelayNanos;
+    private final int timeoutMillis;
+    private final Map<Integer, Long> failedFetches;
+
+    private volatile List<CanteenMenu> menus;
+
+    public CanteenMenuService(String urlTemplate, Path cacheFile, long retryMinutes, int timeoutMillis, ServerMetrics metrics, ServerLog log) {
+        this.urlTemplate = urlTemplate;
+        this.retryDelayNanos = TimeUnit.MINUTES.toNanos(retryMinutes);
+        this.timeoutMillis = timeoutMillis;
+        this.cacheFile = cacheFile;
+        this.metrics = metrics;
+        this.log = log;
+
+        fetcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "canteen-menu-fetcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        isRefreshPending = new AtomicBoolean();
+        failedFetches = new HashMap<>();
+        menus = Collections.emptyList();
+    }
+
+    /**
+     * Loads the cache file and starts refreshing the menus in the background every refreshMinutes.
+     */
+    public void start(long refreshMinutes) {
+        menus = readCache();
+
+        fetcher.scheduleWithFixedDelay(this::refresh, 0, refreshMinutes, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Returns the menu of the week the date belongs to, or null if it isn't available (yet). In the latter case a
+     * refresh is started in the background.
+     */
+    public CanteenMenu getMenu(LocalDate date) {
+        for (CanteenMenu menu : menus) {
+            if (menu.isFor(date)) {
+                return menu;
+            }
+        }
+
+        requestRefresh();
+
+        return null;
+    }
+
+    public LocalDate today() {
+        return LocalDate.now(ZONE);
+    }
+
+    private void requestRefresh() {
+        if (isRefreshPending.compareAndSet(false, true)) {
+            fetcher.execute(this::refresh);
+        }
+    }
+
+    /**
+     * Fetches the menu of the current week if it is missing and, from Thursday on, the one of the upcoming week.
+     * Menus of past weeks are dropped.
+     */
+    private void refresh() {
+        isRefreshPending.set(false);
+
+        LocalDate today = today();
+        List<CanteenMenu> currentMenus = menus;
+        List<CanteenMenu> refreshedMenus = new ArrayList<>();
+
+        for (LocalDate date : getWantedWeeks(today)) {
+            CanteenMenu menu = find(currentMenus, date);
+
+            if (menu == null) {
+                menu = fetch(date);
+            }
+
+            if (menu != null) {
+                refreshedMenus.add(menu);
+            }
+        }
+
+        if (!refreshedMenus.equals(currentMenus)) {
+            menus = Collections.unmodifiableList(refreshedMenus);
+            writeCache(refreshedMenus);
+        }
+    }
+
+    private static List<LocalDate> getWantedWeeks(LocalDate today) {
+        if (today.getDayOfWeek().compareTo(DayOfWeek.THURSDAY) >= 0) {
+            return Arrays.asList(today, today.plusWeeks(1));
+        }
+
+        return Collections.singletonList(today);
+    }
+
+    private static CanteenMenu find(List<CanteenMenu> menus, LocalDate date) {
+        for (CanteenMenu menu : menus) {
+            if (menu.isFor(date)) {
+                return menu;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Downloads the menu of the week, unless fetching it failed less than the retry delay ago. Only called on the
+     * fetcher thread, which is also the only one touching the failed fetches.
+     */
+    private CanteenMenu fetch(LocalDate date) {
+        int year = date.get(IsoFields.WEEK_BASED_YEAR);
+        int week = date.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR);
+        Integer weekKey = year * 100 + week;
+        Long lastFailure = failedFetches.get(weekKey);
+
+        if (lastFailure != null && System.nanoTime() - lastFailure < retryDelayNanos) {
+            return null;
+        }
+
+        String url = urlTemplate
+                .replace("{week}", new DecimalFormat("00").format(week))
+                .replace("{year}", String.valueOf(year));
+
+        try {
+            long start = System.nanoTime();
+            CanteenMenu menu = CanteenMenu.of(year, week, new CanteenMenuHandler(url, week, timeoutMillis));
+
+            metrics.getCanteenFetch().recordSince(start);
+
+            if (menu.isEmpty()) {
+                log.info("The canteen menu of week " + week + "/" + year + " at '" + url + "' has no dishes.");
+                recordFailedFetch(weekKey);
+                return null;
+            }
+
+            log.info("Fetched the canteen menu of week " + week + "/" + year + " in " + (System.nanoTime() - start) / 1_000_000 + " ms.");
+            failedFetches.remove(weekKey);
+
+            return menu;
+        } catch (IOException | RuntimeException e) {
+            metrics.getCanteenFetchFailures().increment();
+            log.info("Couldn't fetch the canteen menu of week " + week + "/" + year + " from '" + url + "': " + e);
+            recordFailedFetch(weekKey);
+            return null;
+        }
+    }
+
+    /**
+     * Remembers when fetching the week's menu failed and forgets failures whose retry delay has passed.
+     */
+    private void recordFailedFetch(Integer weekKey) {
+        long now = System.nanoTime();
+
+        failedFetches.values().removeIf(failure -> now - failure >= retryDelayNanos);
+        failedFetches.put(weekKey, now);
+    }
+
+    /**
+     * Cache format: a line "menu year week" followed by one line per day with the day and its dishes, separated by
+     * tabs.
+     */
+    private void writeCache(List<CanteenMenu> menus) {
+        if (cacheFile == null) {
+            return;
+        }
+
+        List<String> lines = new ArrayList<>();
+
+        for (CanteenMenu menu : menus) {
+            lines.add("menu " + menu.getYear() + " " + menu.getWeek());
+
+            for (DayOfWeek dayOfWeek : DayOfWeek.values()) {
+                StringBuilder line = new StringBuilder(dayOfWeek.name());
+
+                for (String dish : menu.getMenuOfDay(dayOfWeek)) {
+                    line.append('\t').append(dish);
+                }
+
+                lines.add(line.toString());
+            }
+        }
+
+        try {
+            Path temporaryFile = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+            Files.write(temporaryFile, lines, StandardCharsets.UTF_8);
+            Files.move(temporaryFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Couldn't write the canteen menu cache '" + cacheFile + "'.", e);
+        }
+    }
+
+    private List<CanteenMenu> readCache() {
+        if (cacheFile == null || !Files.exists(cacheFile)) {
+            return Collections.emptyList();
+        }
+
+        List<CanteenMenu> cachedMenus = new ArrayList<>();
+
+        try {
+            int year = 0;
+            int week = 0;
+            Map<DayOfWeek, List<String>> dishes = null;
+
+            for (String line : Files.readAllLines(cacheFile, StandardCharsets.UTF_8)) {
+                String[] fields = line.split("\t");
+
+                if (line.startsWith("menu ")) {
+                    if (dishes != null) {
+                        cachedMenus.add(new CanteenMenu(year, week, dishes));
+                    }
+
+                    String[] header = line.split(" ");
+                    year = Integer.parseInt(header[1]);
+                    week = Integer.parseInt(header[2]);
+                    dishes = new EnumMap<>(DayOfWeek.class);
+                } else if (dishes != null && !line.isEmpty()) {
+                    dishes.put(DayOfWeek.valueOf(fields[0]), Arrays.asList(fields).subList(1, fields.length));
+                }
+            }
+
+            if (dishes != null) {
+                cachedMenus.add(new CanteenMenu(year, week, dishes));
+            }
+        } catch (IOException | RuntimeException e) {
+            log.info("Ignoring the unreadable canteen menu cache '" + cacheFile + "': " + e);
+            return Collections.emptyList();
+        }
+
+        return Collections.unmodifiableList(cachedMenus);
+    }
+}
@@ -0,0 +1,118 @@
+package com.company;
+
+import java.util.function.Consumer;
+
+/**
+ * Hand-written scanner for the chat line grammar. Commands have the form "\name argument", where the argument is
+ * everything after the first whitespace following the name; mentions are '@' directly followed by a word. Both are
+ * found in a single pass over the line without regular expressions.
+ */
+public final class ChatLineParser {
+    private ChatLineParser() {
+    }
+
+    /**
+     * Parses a line starting with '\'. Returns null if no command name follows the backslash.
+     */
+    public static ParsedCommand parseCommand(String line) {
+        int length = line.length();
+        int nameEnd = 1;
+
+        while (nameEnd < length && isWordCharacter(line.charAt(nameEnd))) {
+            nameEnd++;
+        }
+
+        if (nameEnd == 1) {
+            return null;
+        }
+
+        String name = line.substring(1, nameEnd);
+
+        if (nameEnd == length || !Character.isWhitespace(line.charAt(nameEnd))) {
+            return new ParsedCommand(name, null);
+        }
+
+        int argumentStart = nameEnd + 1;
+        int argumentEnd = length;
+
+        while (argumentStart < argumentEnd && Character.isWhitespace(line.charAt(argumentStart))) {
+            argumentStart++;
+        }
+
+        while (argumentEnd > argumentStart && Character.isWhitespace(line.charAt(argumentEnd - 1))) {
+            argumentEnd--;
+        }
+
+        return new ParsedCommand(name, argumentStart < argumentEnd ? line.substring(argumentStart, argumentEnd) : null);
+    }
+
+    /**
+     * Calls the consumer with the name of every @mention in the content, in the order they appear.
+     */
+    public static void forEachMention(String content, Consumer<String> consumer) {
+        int length = content.length();
+        int i = content.indexOf('@');
+
+        while (i >= 0 && i < length) {
+            int nameStart = i + 1;
+            int nameEnd = nameStart;
+
+            while (nameEnd < length && isWordCharacter(content.charAt(nameEnd))) {
+                nameEnd++;
+            }
+
+            if (nameEnd > nameStart) {
+                consumer.accept(content.substring(nameStart, nameEnd));
+            }
+
+            i = content.indexOf('@', nameEnd);
+        }
+    }
+
+    /**
+     * Returns true if the string only consists of latin letters, digits and german umlauts.
+     */
+    public static boolean isAlphanumeric(String string) {
+        if (string.isEmpty()) {
+            return false;
+        }
+
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || "äöüÄÖÜ".indexOf(c) >= 0)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Same as the regex class \w: latin letters, digits and the underscore.
+     */
+    private static boolean isWordCharacter(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_';
+    }
+
+    public static class ParsedCommand {
+        private final String name;
+        private final String argument;
+
+        public ParsedCommand(String name, String argument) {
+            this.name = name;
+            this.argument = argument;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the trimmed text after the command name or null if there is none.
+         */
+        public String getArgument() {
+            return argument;
+        }
+    }
+}
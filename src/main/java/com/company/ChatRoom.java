@@ -0,0 +1,92 @@
+package com.company;
+
+import com.company.history.MessageLog;
+import com.company.search.SearchIndex;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A chat room with its own message log and its own subscribers. Posting a message only touches the sessions that are
+ * subscribed to the room, so busy rooms don't slow down each other.
+ */
+public class ChatRoom {
+    private final String name;
+    private final MessageLog messageLog;
+    private final boolean isDefault;
+    private final SearchIndex searchIndex;
+    private final ConcurrentMap<Long, RoomSubscription> subscriptions;
+
+    /**
+     * Creates a room for the given log. If the room is searchable, the messages the log already holds are indexed
+     * along with the first new one.
+     */
+    public ChatRoom(String name, MessageLog messageLog, boolean isDefault, boolean isSearchable) {
+        this.name = name;
+        this.messageLog = messageLog;
+        this.isDefault = isDefault;
+
+        subscriptions = new ConcurrentHashMap<>();
+        searchIndex = isSearchable ? new SearchIndex(messageLog) : null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public MessageLog getMessageLog() {
+        return messageLog;
+    }
+
+    /**
+     * Returns true for the room every session is subscribed to from the start.
+     */
+    public boolean isDefault() {
+        return isDefault;
+    }
+
+    /**
+     * Returns the room's search index or null if searching is disabled.
+     */
+    public SearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    /**
+     * Appends the message to the room's log, indexes it and queues it for every subscriber.
+     */
+    public void addMessage(Message message) {
+        messageLog.append(message);
+
+        if (searchIndex != null) {
+            searchIndex.update();
+        }
+
+        for (RoomSubscription subscription : subscriptions.values()) {
+            subscription.writeCurrentMessages();
+        }
+    }
+
+    /**
+     * Queues the notice for every subscriber without storing it in the log.
+     */
+    public void writeNotice(Notice notice) {
+        for (RoomSubscription subscription : subscriptions.values()) {
+            if (subscription.getClientHandler().isRunning()) {
+                subscription.getClientHandler().writeNotice(notice);
+            }
+        }
+    }
+
+    public int getNumberOfSubscribers() {
+        return subscriptions.size();
+    }
+
+    RoomSubscription subscribe(ClientHandler clientHandler, int replayCount) {
+        return subscriptions.computeIfAbsent(clientHandler.getSessionId(), sessionId -> new RoomSubscription(this, clientHandler, replayCount));
+    }
+
+    boolean unsubscribe(RoomSubscription subscription) {
+        return subscriptions.remove(subscription.getClientHandler().getSessionId(), subscription);
+    }
+}
@@ -1,118 +1,335 @@
 package com.company;
 
-import org.apache.commons.lang3.StringUtils;
+import com.company.cluster.ClusterNode;
+import com.company.history.MessageJournal;
+import com.company.history.MessageLog;
+import com.company.logging.RotatingFileOutputStream;
+import com.company.logging.ServerLog;
+import com.company.metrics.MetricsHttpServer;
+import com.company.metrics.ServerMetrics;
+import com.company.poll.Poll;
+import com.company.poll.PollRegistry;
+import com.company.poll.Vote;
+import com.company.ratelimit.ConnectionLimiter;
+import com.company.ratelimit.RateLimiter;
+import com.company.transport.AcceptPipeline;
+import com.company.transport.BlockingTransport;
+import com.company.transport.ITransport;
+import com.company.transport.NioTransport;
 import org.jsoup.safety.Whitelist;
 
 import java.io.IOException;
 import java.net.InetAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.text.DecimalFormat;
+import java.nio.file.Paths;
 import java.time.DayOfWeek;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ChatServer {
-    private final Map<String, ICommand> commands;
-    private final List<String> colorList;
-    private List<Message> messages;
-    private List<ClientHandler> clientHandlers;
-    private CanteenMenuHandler canteenMenuHandler = null;
-    private Whitelist whitelist;
-    private int userCounter = 0;
+    private static final int MAX_REMOTE_USERS = 4096;
+
+    private final CommandExecutor commandExecutor;
+    private final MessageLog messageLog;
+    private final MessageJournal messageJournal;
+    private final SessionRegistry sessionRegistry;
+    private final RoomRegistry roomRegistry;
+    private final PollRegistry pollRegistry;
+    private final ClusterNode clusterNode;
+    private final ConcurrentMap<String, User> remoteUsers;
+    private final CanteenMenuService canteenMenuService;
+    private final HtmlSanitizer htmlSanitizer;
+    private final ServerConfig config;
+    private final ServerMetrics metrics;
+    private final ServerLog log;
+    private final RateLimiter rateLimiter;
+    private final ConnectionLimiter connectionLimiter;
+    private final HostNameResolver hostNameResolver;
+    private final IdleMonitor idleMonitor;
+    private final Set<String> adminAddresses;
+    private final ScheduledExecutorService scheduler;
+    private final OutboundQueue.OverflowPolicy outboundOverflowPolicy;
+    private final Notice helpNotice;
+    private final AtomicInteger userCounter;
 
     public ChatServer() {
-        messages = new ArrayList<>();
-        clientHandlers = new ArrayList<>();
-
-        commands = new HashMap<>();
-        commands.put("setname", this::commandSetName);
-        commands.put("canteen", this::commandCanteen);
-        commands.put("userlist", (ClientHandler clientHandler, String value) -> commandUserList(clientHandler));
-        commands.put("help", (ClientHandler clientHandler, String value) -> commandHelp(clientHandler));
-        commands.put("exit", (ClientHandler clientHandler, String value) -> commandExit(clientHandler));
-
-        colorList = new ArrayList<>(
-                Arrays.asList("red", "#a38a00", "olive", "maroon", "lime", "green", "teal", "navy", "fuchsia", "purple")
+        this(new ServerConfig());
+    }
+
+    public ChatServer(ServerConfig config) {
+        this.config = config;
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-server-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        outboundOverflowPolicy = OutboundQueue.OverflowPolicy.valueOf(config.getString("outbound.overflow", "drop_oldest").toUpperCase());
+        sessionRegistry = new SessionRegistry();
+        metrics = new ServerMetrics(sessionRegistry::getNumberOfSessions, sessionRegistry::getOutboundQueueDepth);
+        log = createLog();
+        rateLimiter = new RateLimiter(
+                config.getInt("ratelimit.session.rate", 5),
+                config.getInt("ratelimit.session.burst", 3),
+                config.getInt("ratelimit.ip.rate", 20),
+                config.getInt("ratelimit.ip.burst", 20),
+                config.getInt("ratelimit.global.rate", 2000),
+                config.getInt("ratelimit.global.burst", 4000)
         );
+        scheduler.scheduleWithFixedDelay(rateLimiter::removeIdleBuckets, 1, 1, TimeUnit.MINUTES);
+        connectionLimiter = new ConnectionLimiter(
+                config.getInt("connections.max", 10000),
+                config.getInt("connections.per.ip", 20)
+        );
+        hostNameResolver = new HostNameResolver(
+                config.getBoolean("dns.enabled", true),
+                config.getInt("dns.threads", 4),
+                config.getLong("dns.cache.seconds", 3600),
+                config.getInt("dns.cache.size", 10000)
+        );
+        userCounter = new AtomicInteger();
+        idleMonitor = config.getBoolean("idle.enabled", true) ? new IdleMonitor(
+                config.getLong("idle.timeout.seconds", 300),
+                config.getLong("idle.ping.timeout.seconds", 60),
+                config.getLong("idle.tick.ms", 1000),
+                metrics,
+                log
+        ) : null;
+        adminAddresses = new HashSet<>(Arrays.asList(config.getString("admin.addresses", "127.0.0.1,0:0:0:0:0:0:0:1").split(",")));
+        messageJournal = openMessageJournal();
+        messageLog = new MessageLog(config.getInt("history.capacity", 1024), messageJournal);
+
+        if (messageJournal != null) {
+            restoreMessages();
+            messageJournal.start(messageLog);
+        }
+
+        boolean isSearchEnabled = config.getBoolean("search.enabled", true);
 
-        initCanteenMenuHandler();
+        roomRegistry = new RoomRegistry(
+                new ChatRoom(config.getString("rooms.default", "lobby"), messageLog, true, isSearchEnabled),
+                config.getInt("rooms.max", 1000),
+                config.getInt("rooms.history.capacity", 256),
+                config.getInt("history.replay", 50),
+                isSearchEnabled
+        );
+
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "chat-server-shutdown"));
+
+        pollRegistry = new PollRegistry(config.getInt("polls.max", 100));
+
+        commandExecutor = new CommandExecutor(config.getInt("commands.threads", 4), config.getInt("commands.queue", 256), metrics, log);
+        commandExecutor.addInline("setname", this::commandSetName);
+        commandExecutor.addInline("userlist", (ClientHandler clientHandler, String value) -> commandUserList(clientHandler));
+        commandExecutor.addInline("help", (ClientHandler clientHandler, String value) -> commandHelp(clientHandler));
+        commandExecutor.addInline("exit", (ClientHandler clientHandler, String value) -> commandExit(clientHandler));
+        commandExecutor.addInline("msg", this::commandMsg);
+        commandExecutor.addInline("poll", this::commandPoll);
+        commandExecutor.addInline("vote", this::commandVote);
+        commandExecutor.addInline("results", this::commandResults);
+        commandExecutor.addInline("join", this::commandJoin);
+        commandExecutor.addInline("leave", this::commandLeave);
+        commandExecutor.addInline("rooms", (ClientHandler clientHandler, String value) -> commandRooms(clientHandler));
+        commandExecutor.addInline("protocol", this::commandProtocol);
+        addAsyncCommand("canteen", this::commandCanteen);
+        addAsyncCommand("stats", (ClientHandler clientHandler, String value) -> commandStats(clientHandler));
+        addAsyncCommand("history", this::commandHistory);
+        addAsyncCommand("resume", this::commandResume);
+        addAsyncCommand("search", this::commandSearch);
+
+        helpNotice = new Notice("Available commands: " + commandExecutor.getNames() + " (resume needs the binary protocol)");
+
+        canteenMenuService = new CanteenMenuService(
+                config.getString("canteen.url", CanteenMenuService.DEFAULT_URL),
+                Paths.get(config.getString("canteen.cache.file", "canteen-menu.cache")),
+                config.getLong("canteen.retry.minutes", 15),
+                config.getInt("canteen.timeout.ms", 5000),
+                metrics,
+                log
+        );
+
+        if (config.getBoolean("canteen.enabled", true)) {
+            canteenMenuService.start(config.getLong("canteen.refresh.minutes", 60));
+        }
 
-        whitelist = Whitelist.none();
+        htmlSanitizer = new HtmlSanitizer(Whitelist.none());
+        remoteUsers = new ConcurrentHashMap<>();
+        clusterNode = createClusterNode();
     }
 
     public void start() throws IOException {
-        ServerSocket server = new ServerSocket(5555);
+        ITransport transport = createTransport();
 
         InetAddress address = InetAddress.getLocalHost();
-        System.out.println("Server started with IP: " + address.getHostAddress() + "\n");
+        log.info("Server started with IP: " + address.getHostAddress());
 
-        boolean isRunning = true;
-        Socket client = null;
+        int metricsPort = config.getInt("metrics.port", 9555);
 
-        while (isRunning) {
+        if (metricsPort > 0) {
+            MetricsHttpServer metricsHttpServer = new MetricsHttpServer(metrics, config.getString("metrics.host", "127.0.0.1"), metricsPort);
+            metricsHttpServer.start();
+
+            log.info("Metrics are served at " + metricsHttpServer.getUrl());
+        }
+
+        if (clusterNode != null) {
+            clusterNode.start(scheduler);
+        }
+
+        transport.start(this, config.getInt("port", 5555));
+    }
+
+    /**
+     * Creates the cluster node if this server listens for other nodes ("cluster.port") or has peers ("cluster.peers").
+     */
+    private ClusterNode createClusterNode() {
+        int clusterPort = config.getInt("cluster.port", 0);
+        String peers = config.getString("cluster.peers", "");
+
+        if (clusterPort <= 0 && peers.trim().isEmpty()) {
+            return null;
+        }
+
+        String nodeId = config.getString("cluster.node.id", null);
+
+        if (nodeId == null) {
             try {
-                boolean userWasAlreadyConnected = false;
-                client = server.accept();
+                nodeId = InetAddress.getLocalHost().getHostName() + ":" + config.getInt("port", 5555);
+            } catch (IOException e) {
+                nodeId = "node:" + config.getInt("port", 5555);
+            }
+        }
 
-                String clientAddress;
-                clientAddress = client.getInetAddress().getHostAddress();
+        return new ClusterNode(
+                this,
+                nodeId,
+                config.getString("cluster.host", "127.0.0.1"),
+                clusterPort,
+                peers,
+                config.getInt("cluster.queue.capacity", 16384),
+                config.getLong("cluster.presence.interval.ms", 5000)
+        );
+    }
 
-                User user = new User("Anonym" + (userCounter + 1), clientAddress, colorList.get(userCounter % colorList.size()));
+    /**
+     * Registers a command that may be slow (disk reads, searches, formatting large replies), so it runs on the command
+     * executor. Its timeout and concurrency limit can be set with "commands.name.timeout.ms" and
+     * "commands.name.max.concurrent".
+     */
+    private void addAsyncCommand(String name, ICommand command) {
+        commandExecutor.addAsync(
+                name,
+                command,
+                config.getLong("commands." + name + ".timeout.ms", config.getLong("commands.timeout.ms", 5000)),
+                config.getInt("commands." + name + ".max.concurrent", config.getInt("commands.max.concurrent", 16))
+        );
+    }
 
-                for (ClientHandler ch : clientHandlers) {
-                    if (!userWasAlreadyConnected && ch.getUser().getIpAddress().equals(clientAddress)) {
-                        user = ch.getUser();
-                        userWasAlreadyConnected = true;
-                    }
-                }
+    private ITransport createTransport() throws IOException {
+        String transport = config.getString("transport", "blocking");
+        AcceptPipeline acceptPipeline = new AcceptPipeline(
+                this,
+                config.getInt("accept.threads", 4),
+                config.getInt("accept.queue", 4096),
+                config.getInt("keepalive.idle.seconds", config.getInt("idle.timeout.seconds", 300)),
+                config.getInt("keepalive.interval.seconds", 10),
+                config.getInt("keepalive.probes", 6)
+        );
+        int backlog = config.getInt("accept.backlog", 1024);
 
-                ClientHandler clientHandler = new ClientHandler(this, client, commands, user, whitelist);
-                clientHandler.start();
-                clientHandlers.add(clientHandler);
+        switch (transport) {
+            case "blocking":
+                return new BlockingTransport(false, acceptPipeline, backlog);
+            case "virtual":
+                return new BlockingTransport(true, acceptPipeline, backlog);
+            case "nio":
+                return new NioTransport(config.getInt("nio.threads", Runtime.getRuntime().availableProcessors()), acceptPipeline, backlog, log);
+            default:
+                throw new IllegalArgumentException("Unknown transport '" + transport + "'. Supported: blocking, virtual, nio");
+        }
+    }
 
-                clientHandler.writeCustomMessage(getCurrentUsersString());
-                clientHandler.writeCustomMessage("<b>Use the command \"\\help\" to get a list of all supported commands.</b>");
+    /**
+     * Checks the connection caps for a newly accepted connection. An admitted connection is released again when its
+     * session is removed, or right away if it never gets one.
+     */
+    public boolean admitConnection(InetAddress clientInetAddress) {
+        return connectionLimiter.tryAcquire(clientInetAddress.getHostAddress());
+    }
 
-                if (userWasAlreadyConnected) {
-                    System.out.println("Client (IP: '" + clientAddress + "'; HOSTNAME: '" + client.getInetAddress().getHostName() + "'; NAME: '" + clientHandler.getUser().getName() + "') has reentered this server.");
-                    broadcastMessage("Client '" + clientHandler.getUser().getName() + "' has reentered this server.");
-                } else {
-                    userCounter++;
-                    System.out.println("New client (IP: '" + clientAddress + "'; HOSTNAME: '" + client.getInetAddress().getHostName() + "'; NAME: '" + clientHandler.getUser().getName() + "') has been connected to this server.");
-                    broadcastMessage("New client '" + clientHandler.getUser().getName() + "' has been connected to this server.");
-                }
-            } catch (Exception e) {
-                isRunning = false;
+    public void releaseConnection(InetAddress clientInetAddress) {
+        connectionLimiter.release(clientInetAddress.getHostAddress());
+    }
 
-                e.printStackTrace();
+    /**
+     * Sets up the session of an admitted connection. Runs on the setup threads of the {@link AcceptPipeline}, so it
+     * may be called for several connections at once. The host name is only logged once it has been resolved.
+     */
+    public <T extends ClientHandler> T connectClient(InetAddress clientInetAddress, ClientHandler.Factory<T> clientHandlerFactory) throws IOException {
+        String clientAddress;
+        clientAddress = clientInetAddress.getHostAddress();
 
-                if (client != null) {
-                    client.close();
-                }
+        User user = sessionRegistry.getUserByIpAddress(clientAddress);
+        boolean userWasAlreadyConnected = user != null;
+
+        while (user == null) {
+            int number = userCounter.incrementAndGet();
+            user = new User("Anonym" + number, clientAddress, User.COLORS.get((number - 1) % User.COLORS.size()));
+
+            if (!sessionRegistry.addUser(user)) {
+                user = sessionRegistry.getUserByIpAddress(clientAddress);
             }
         }
-    }
 
-    public void commandCanteen(ClientHandler clientHandler, String value) {
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(new Date());
+        T clientHandler;
+
+        try {
+            clientHandler = clientHandlerFactory.create(user);
+        } catch (IOException | RuntimeException e) {
+            releaseConnection(clientInetAddress);
+            throw e;
+        }
+
+        addClientHandler(clientHandler);
+        metrics.getConnectionsAccepted().increment();
 
-        if(canteenMenuHandler != null && !canteenMenuHandler.isRecent(cal.get(Calendar.WEEK_OF_YEAR))) {
-            initCanteenMenuHandler();
+        if (idleMonitor != null) {
+            idleMonitor.watch(clientHandler);
         }
 
-        if (canteenMenuHandler != null) {
-            if (value == null || value.length() == 0 || !value.matches("[1-5]")) {
-                LocalDate date = LocalDate.now();
-                DayOfWeek dayOfWeek = date.getDayOfWeek();
-                List<String> menu = canteenMenuHandler.getMenuOfDay(dayOfWeek);
-                clientHandler.writeCustomMessage("<b>Today's canteen menu: \n" + String.join("\n", menu) + "</b>");
+        clientHandler.writeCustomMessage(getCurrentUsersString());
+        clientHandler.writeCustomMessage("<b>Use the command \"\\help\" to get a list of all supported commands.</b>");
+
+        String userName = clientHandler.getUser().getName();
+
+        if (userWasAlreadyConnected) {
+            hostNameResolver.resolve(clientInetAddress).thenAccept(hostName -> log.info("Client (IP: '" + clientAddress + "'; HOSTNAME: '" + hostName + "'; NAME: '" + userName + "') has reentered this server."));
+            broadcastMessage("Client '" + userName + "' has reentered this server.");
+        } else {
+            hostNameResolver.resolve(clientInetAddress).thenAccept(hostName -> log.info("New client (IP: '" + clientAddress + "'; HOSTNAME: '" + hostName + "'; NAME: '" + userName + "') has been connected to this server."));
+            broadcastMessage("New client '" + userName + "' has been connected to this server.");
+        }
+
+        return clientHandler;
+    }
+
+    public void commandCanteen(ClientHandler clientHandler, String value) {
+        LocalDate today = canteenMenuService.today();
+        CanteenMenu canteenMenu = canteenMenuService.getMenu(today);
+
+        if (canteenMenu != null) {
+            if (value == null || value.length() != 1 || value.charAt(0) < '1' || value.charAt(0) > '5') {
+                clientHandler.writeCustomMessage(canteenMenu.getTodayResponse(today.getDayOfWeek()));
             } else {
-                DayOfWeek dayOfWeek = DayOfWeek.of(Integer.parseInt(value));
-                List<String> menu = canteenMenuHandler.getMenuOfDay(dayOfWeek);
-                clientHandler.writeCustomMessage("<b>" + StringUtils.capitalize(dayOfWeek.name().toLowerCase()) + "'s canteen menu: \n" + String.join("\n", menu) + "</b>");
+                clientHandler.writeCustomMessage(canteenMenu.getDayResponse(DayOfWeek.of(value.charAt(0) - '0')));
             }
         } else {
             clientHandler.writeCustomMessage("Error while fetching canteen menu.");
@@ -126,15 +343,18 @@ public class ChatServer {
             clientHandler.writeCustomMessage("Your wanted name is too long. Maximum 16 characters are allowed.");
         } else if (newUsername.length() < 3) {
             clientHandler.writeCustomMessage("Your wanted name is too short. Minimum 3 characters are needed.");
-        } else if (!newUsername.matches("[a-zA-z0-9äöüÄÖÜ]+")) {
+        } else if (!ChatLineParser.isAlphanumeric(newUsername)) {
             clientHandler.writeCustomMessage("Your wanted name contains not allowed characters. Only letters and numbers are allowed.");
-        } else if (isUsernameAlreadyInUse(newUsername)) {
-            clientHandler.writeCustomMessage("Your wanted name is already in use.");
         } else {
-            clientHandler.writeCustomMessage("You've successfully changed your name.");
-            broadcastMessage("The user '" + clientHandler.getUser().getName() + "' changed his name to '" + newUsername + "'.");
+            String oldUsername = clientHandler.getUser().getName();
 
-            clientHandler.getUser().setName(newUsername);
+            if (sessionRegistry.rename(clientHandler.getUser(), newUsername)) {
+                publishPresence();
+                clientHandler.writeCustomMessage("You've successfully changed your name.");
+                broadcastMessage("The user '" + oldUsername + "' changed his name to '" + newUsername + "'.");
+            } else {
+                clientHandler.writeCustomMessage("Your wanted name is already in use.");
+            }
         }
     }
 
@@ -155,66 +375,679 @@ public class ChatServer {
     }
 
     public void commandHelp(ClientHandler clientHandler) {
-        clientHandler.writeCustomMessage("<b>Available commands: " + commands.keySet().toString() + "</b>");
+        clientHandler.writeNotice(helpNotice);
+    }
+
+    public void commandStats(ClientHandler clientHandler) {
+        if (!isAdmin(clientHandler)) {
+            clientHandler.writeCustomMessage("Only administrators may see the server statistics.");
+            return;
+        }
+
+        clientHandler.writeCustomMessage("<b>Server statistics:\n" + metrics.getSummary() + "</b>");
+    }
+
+    /**
+     * Administrators are the users connecting from one of the addresses in the "admin.addresses" option.
+     */
+    public boolean isAdmin(ClientHandler clientHandler) {
+        return adminAddresses.contains(clientHandler.getUser().getIpAddress());
+    }
+
+    /**
+     * Sends a private message straight to the outbound queues of the recipient's sessions (and the sender's other
+     * sessions). It is neither stored in a message log nor written to the journal.
+     */
+    public void commandMsg(ClientHandler clientHandler, String value) {
+        int separator = value == null ? -1 : value.indexOf(' ');
+
+        if (separator < 0) {
+            clientHandler.writeCustomMessage("You haven't provided the user and the message: \\msg name message");
+            return;
+        }
+
+        String recipientName = value.substring(0, separator);
+        String content = value.substring(separator + 1).trim();
+        User sender = clientHandler.getUser();
+        User recipient = sessionRegistry.getConnectedUser(recipientName);
+
+        if (recipient == null) {
+            clientHandler.writeCustomMessage("The user '" + recipientName + "' isn't connected.");
+        } else if (content.length() > 250) {
+            clientHandler.writeCustomMessage("Your message is too long. Maximum of 250 characters is allowed.");
+        } else {
+            String cleanContent = htmlSanitizer.clean(content);
+
+            for (ClientHandler recipientHandler : sessionRegistry.getSessions(recipient)) {
+                if (!recipient.equals(sender) && recipientHandler.isRunning()) {
+                    recipientHandler.writePrivateMessage(sender, recipient, cleanContent);
+                }
+            }
+
+            for (ClientHandler senderHandler : sessionRegistry.getSessions(sender)) {
+                if (senderHandler.isRunning()) {
+                    senderHandler.writePrivateMessage(sender, recipient, cleanContent);
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts a poll: "\poll title; option; option...". Options are numbered from 1.
+     */
+    public void commandPoll(ClientHandler clientHandler, String value) {
+        List<String> parts = new ArrayList<>();
+
+        if (value != null) {
+            for (String part : value.split(";")) {
+                if (!part.trim().isEmpty()) {
+                    parts.add(htmlSanitizer.clean(part.trim()));
+                }
+            }
+        }
+
+        if (parts.size() < 3) {
+            clientHandler.writeCustomMessage("A poll needs a title and at least two options: \\poll title; option; option");
+        } else if (parts.size() > 11) {
+            clientHandler.writeCustomMessage("A poll can't have more than 10 options.");
+        } else if (value.length() > 250) {
+            clientHandler.writeCustomMessage("Your poll is too long. Maximum of 250 characters is allowed.");
+        } else {
+            Poll poll = pollRegistry.create(parts.get(0), clientHandler.getUser(), parts.subList(1, parts.size()));
+            StringBuilder announcement = new StringBuilder("The user '" + clientHandler.getUser().getName() + "' started poll "
+                    + poll.getId() + " '" + poll.getTitle() + "':");
+
+            for (int i = 0; i < poll.getOptions().size(); i++) {
+                announcement.append(' ').append(i + 1).append(") ").append(poll.getOptions().get(i));
+            }
+
+            announcement.append(". Vote with \\vote ").append(poll.getId()).append(" number.");
+
+            // polls only exist on this node, so the announcement isn't relayed to the cluster
+            writeNotice(announcement.toString());
+        }
+    }
+
+    /**
+     * Votes for an option: "\vote poll option", or "\vote option" for the latest poll.
+     */
+    public void commandVote(ClientHandler clientHandler, String value) {
+        String[] arguments = value == null ? new String[0] : value.split("\\s+");
+        Poll poll;
+        int option;
+
+        try {
+            if (arguments.length == 1) {
+                poll = pollRegistry.getLatest();
+                option = Integer.parseInt(arguments[0]);
+            } else if (arguments.length == 2) {
+                poll = pollRegistry.get(Integer.parseInt(arguments[0]));
+                option = Integer.parseInt(arguments[1]);
+            } else {
+                clientHandler.writeCustomMessage("You haven't provided the option: \\vote poll option");
+                return;
+            }
+        } catch (NumberFormatException e) {
+            clientHandler.writeCustomMessage("The poll and the option must be numbers.");
+            return;
+        }
+
+        if (poll == null) {
+            clientHandler.writeCustomMessage("There is no such poll.");
+        } else if (option < 1 || option > poll.getOptions().size()) {
+            clientHandler.writeCustomMessage("Poll " + poll.getId() + " only has the options 1 to " + poll.getOptions().size() + ".");
+        } else if (poll.addVote(new Vote(clientHandler.getUser(), option - 1))) {
+            clientHandler.writeCustomMessage("You've voted for '" + poll.getOptions().get(option - 1) + "' in poll " + poll.getId() + ".");
+        } else {
+            clientHandler.writeCustomMessage("You've already voted in poll " + poll.getId() + ".");
+        }
+    }
+
+    /**
+     * Shows the current results of the given or the latest poll.
+     */
+    public void commandResults(ClientHandler clientHandler, String value) {
+        Poll poll;
+
+        try {
+            poll = value == null ? pollRegistry.getLatest() : pollRegistry.get(Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            clientHandler.writeCustomMessage("The poll must be a number.");
+            return;
+        }
+
+        if (poll == null) {
+            clientHandler.writeCustomMessage("There is no such poll.");
+        } else {
+            clientHandler.writeCustomMessage("<b>" + poll + "</b>");
+        }
+    }
+
+    public void commandJoin(ClientHandler clientHandler, String roomName) {
+        if (roomName == null) {
+            clientHandler.writeCustomMessage("You haven't provided the room.");
+        } else if (roomName.length() > 16) {
+            clientHandler.writeCustomMessage("The room name is too long. Maximum 16 characters are allowed.");
+        } else if (roomName.length() < 3) {
+            clientHandler.writeCustomMessage("The room name is too short. Minimum 3 characters are needed.");
+        } else if (!ChatLineParser.isAlphanumeric(roomName)) {
+            clientHandler.writeCustomMessage("The room name contains not allowed characters. Only letters and numbers are allowed.");
+        } else {
+            RoomSubscription subscription = clientHandler.getSubscription(RoomRegistry.toKey(roomName));
+
+            if (subscription == null) {
+                subscription = roomRegistry.join(roomName, clientHandler);
+
+                if (subscription == null) {
+                    clientHandler.writeCustomMessage("There are too many rooms already.");
+                    return;
+                }
+
+                ChatRoom room = subscription.getRoom();
+                room.writeNotice(new Notice("The user '" + clientHandler.getUser().getName() + "' has joined the room '" + room.getName() + "'."));
+                subscription.writeCurrentMessages();
+            }
+
+            clientHandler.setCurrentRoom(subscription.getRoom());
+            clientHandler.writeCustomMessage("Your messages now go to the room '" + subscription.getRoom().getName() + "'.");
+        }
+    }
+
+    public void commandLeave(ClientHandler clientHandler, String roomName) {
+        ChatRoom room = roomName == null ? clientHandler.getCurrentRoom() : roomRegistry.getRoom(roomName);
+        RoomSubscription subscription = room == null ? null : clientHandler.getSubscription(RoomRegistry.toKey(room.getName()));
+
+        if (subscription == null) {
+            clientHandler.writeCustomMessage("You aren't in the room '" + roomName + "'.");
+        } else if (room.isDefault()) {
+            clientHandler.writeCustomMessage("You can't leave the room '" + room.getName() + "'.");
+        } else {
+            roomRegistry.leave(subscription);
+            room.writeNotice(new Notice("The user '" + clientHandler.getUser().getName() + "' has left the room '" + room.getName() + "'."));
+
+            if (clientHandler.getCurrentRoom() == room) {
+                clientHandler.setCurrentRoom(roomRegistry.getDefaultRoom());
+            }
+
+            clientHandler.writeCustomMessage("You've left the room '" + room.getName() + "'. Your messages now go to the room '"
+                    + clientHandler.getCurrentRoom().getName() + "'.");
+        }
+    }
+
+    public void commandRooms(ClientHandler clientHandler) {
+        StringJoiner rooms = new StringJoiner(", ");
+
+        for (ChatRoom room : roomRegistry.getRooms()) {
+            String marker = clientHandler.getSubscription(RoomRegistry.toKey(room.getName())) != null ? "*" : "";
+            rooms.add(marker + room.getName() + " (" + room.getNumberOfSubscribers() + ")");
+        }
+
+        clientHandler.writeCustomMessage("<b>Rooms (* joined): [" + rooms + "]</b>");
+    }
+
+    /**
+     * Pages back through the current room's messages: "\history [before-sequence] [count]". Without a sequence it
+     * continues before the oldest message the session has got so far.
+     */
+    public void commandHistory(ClientHandler clientHandler, String value) {
+        ChatRoom room = clientHandler.getCurrentRoom();
+        RoomSubscription subscription = clientHandler.getSubscription(RoomRegistry.toKey(room.getName()));
+        String[] arguments = value == null ? new String[0] : value.split("\\s+");
+        long before;
+        int count;
+
+        try {
+            before = arguments.length > 0 ? Long.parseLong(arguments[0]) : subscription.getHistoryCursor();
+            count = arguments.length > 1 ? Integer.parseInt(arguments[1]) : config.getInt("history.page.size", 50);
+        } catch (NumberFormatException e) {
+            clientHandler.writeCustomMessage("The sequence and the count must be numbers: \\history before count");
+            return;
+        }
+
+        count = Math.max(1, Math.min(count, config.getInt("history.page.max", 200)));
+
+        List<Message> messages = getMessages(room, Math.max(0, before - count), before);
+
+        if (messages.isEmpty()) {
+            clientHandler.writeCustomMessage("There are no older messages in the room '" + room.getName() + "'.");
+            return;
+        }
+
+        clientHandler.writeCustomMessage("<b>Messages " + messages.get(0).getSequence() + " to " + messages.get(messages.size() - 1).getSequence()
+                + " of the room '" + room.getName() + "':</b>");
+
+        for (Message message : messages) {
+            clientHandler.writeHistoryMessage(message);
+        }
+
+        subscription.setHistoryCursor(Math.min(subscription.getHistoryCursor(), messages.get(0).getSequence()));
+    }
+
+    /**
+     * Sends the messages of the default room that a reconnecting client missed between the last one it had seen and
+     * the ones replayed on connect: "\resume last-seen-sequence". Only binary clients can use it, because only their
+     * frames carry the sequence of every message; text clients just see it in history replays.
+     */
+    public void commandResume(ClientHandler clientHandler, String value) {
+        if (!clientHandler.isBinary()) {
+            clientHandler.writeCustomMessage("\\resume needs the binary protocol (\\protocol binary), whose frames carry the sequence of every message.");
+            return;
+        }
+
+        ChatRoom room = roomRegistry.getDefaultRoom();
+        RoomSubscription subscription = clientHandler.getSubscription(RoomRegistry.toKey(room.getName()));
+        long lastSeenSequence;
+
+        if (value == null) {
+            clientHandler.writeCustomMessage("You haven't provided the sequence of the last message you've seen: \\resume sequence");
+            return;
+        }
+
+        try {
+            lastSeenSequence = Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            clientHandler.writeCustomMessage("You haven't provided the sequence of the last message you've seen: \\resume sequence");
+            return;
+        }
+
+        long first = lastSeenSequence + 1;
+        long end = subscription.getReplayStart();
+        int maxMessages = config.getInt("history.resume.max", 1000);
+
+        if (first >= end) {
+            clientHandler.writeCustomMessage("You haven't missed any messages.");
+            return;
+        }
+
+        if (end - first > maxMessages) {
+            clientHandler.writeCustomMessage("You have missed " + (end - first) + " messages, only the latest " + maxMessages + " are sent.");
+            first = end - maxMessages;
+        }
+
+        List<Message> messages = getMessages(room, first, end);
+
+        for (Message message : messages) {
+            clientHandler.writeHistoryMessage(message);
+        }
+
+        if (!messages.isEmpty()) {
+            subscription.setHistoryCursor(Math.min(subscription.getHistoryCursor(), messages.get(0).getSequence()));
+        }
+    }
+
+    /**
+     * Finds the newest messages of the current room that contain all the given words (or are written by them).
+     */
+    public void commandSearch(ClientHandler clientHandler, String query) {
+        ChatRoom room = clientHandler.getCurrentRoom();
+
+        if (query == null) {
+            clientHandler.writeCustomMessage("You haven't provided what to search for.");
+            return;
+        }
+
+        if (room.getSearchIndex() == null) {
+            clientHandler.writeCustomMessage("Searching is disabled on this server.");
+            return;
+        }
+
+        List<Message> messages = room.getSearchIndex().search(query, config.getInt("search.results", 10));
+
+        if (messages.isEmpty()) {
+            clientHandler.writeCustomMessage("No messages in the room '" + room.getName() + "' match '" + htmlSanitizer.clean(query) + "'.");
+            return;
+        }
+
+        clientHandler.writeCustomMessage("<b>The latest " + messages.size() + " messages in the room '" + room.getName() + "' matching '"
+                + htmlSanitizer.clean(query) + "':</b>");
+
+        for (Message message : messages) {
+            clientHandler.writeHistoryMessage(message);
+        }
+    }
+
+    /**
+     * Returns the room's messages from first (inclusive) to end (exclusive) that are still available. They are taken
+     * from the room's log; older messages of the default room are read from the journal.
+     */
+    private List<Message> getMessages(ChatRoom room, long first, long end) {
+        MessageLog roomLog = room.getMessageLog();
+        long oldestInLog = roomLog.getOldestSequence();
+        List<Message> messages = new ArrayList<>();
+
+        if (first < oldestInLog && room.isDefault() && messageJournal != null) {
+            try {
+                messages.addAll(messageJournal.readRange(first, Math.min(end, oldestInLog)));
+            } catch (IOException e) {
+                log.error("Couldn't read messages " + first + " to " + end + " from the journal.", e);
+            }
+        }
+
+        for (long sequence = Math.max(first, oldestInLog); sequence < end; sequence++) {
+            Message message = roomLog.get(sequence);
+
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+
+        return messages;
+    }
+
+    /**
+     * Switches the session between the HTML line protocol ("text", the default) and the compact "binary" protocol
+     * described in {@link BinaryFrames}. Clients send it as their first line; input stays line based either way.
+     */
+    public void commandProtocol(ClientHandler clientHandler, String value) {
+        if ("binary".equals(value)) {
+            clientHandler.setBinary(true);
+            clientHandler.writeCustomMessage("You're now using the binary protocol.");
+        } else if ("text".equals(value)) {
+            clientHandler.setBinary(false);
+            clientHandler.writeCustomMessage("You're now using the text protocol.");
+        } else {
+            clientHandler.writeCustomMessage("Supported protocols: text, binary");
+        }
     }
 
     public void commandExit(ClientHandler clientHandler) {
-        System.out.println("Client '" + clientHandler.getUser().getName() + "' sends exit command.");
-        System.out.println("Closing the connection with '" + clientHandler.getUser().getName() + "'.");
+        log.info("Client '" + clientHandler.getUser().getName() + "' sends exit command.");
+        log.info("Closing the connection with '" + clientHandler.getUser().getName() + "'.");
         broadcastMessage("The user '" + clientHandler.getUser().getName() + "' has exited.");
 
         clientHandler.exit();
     }
 
+    /**
+     * Sends the notice to every session of this server and to the other nodes of the cluster.
+     */
     public void broadcastMessage(String message) {
-        System.out.println(message);
+        writeNotice(message);
+
+        if (clusterNode != null) {
+            clusterNode.publishNotice(message);
+        }
+    }
 
-        for (ClientHandler clientHandler : clientHandlers) {
+    /**
+     * Shows a notice that was broadcast on another node of the cluster.
+     */
+    public void deliverRemoteNotice(String message) {
+        writeNotice(message);
+    }
+
+    /**
+     * Posts a message that was written on another node of the cluster. Its author gets an ip address prefixed with the
+     * origin, so remote users never equal local ones; mentions are resolved against the local users. Messages for rooms
+     * that don't exist on this node are ignored.
+     */
+    public void deliverRemoteMessage(String roomName, String origin, String authorName, String authorIpAddress, String authorColor, String content, long timeMillis) {
+        ChatRoom room = roomName == null ? roomRegistry.getDefaultRoom() : roomRegistry.getRoom(roomName);
+
+        if (room == null) {
+            return;
+        }
+
+        User author = getRemoteUser(origin, authorName, authorIpAddress, authorColor);
+        Message message = new Message(author, content, Instant.ofEpochMilli(timeMillis).atZone(ZoneId.of("Europe/Paris")), room.isDefault() ? null : room.getName());
+
+        ChatLineParser.forEachMention(content, recipientName -> {
+            User recipient = getUserByUsername(recipientName);
+            if (recipient != null) {
+                message.addRecipient(recipient);
+            }
+        });
+
+        long start = System.nanoTime();
+
+        room.addMessage(message);
+
+        metrics.getBroadcastFanOut().recordSince(start);
+    }
+
+    /**
+     * Returns the one user object for an author of another node, so relayed messages of the same author share it. The
+     * cache is dropped once it holds {@value #MAX_REMOTE_USERS} authors.
+     */
+    private User getRemoteUser(String origin, String name, String ipAddress, String color) {
+        String key = origin + '\n' + ipAddress + '\n' + name + '\n' + color;
+        User user = remoteUsers.get(key);
+
+        if (user == null) {
+            if (remoteUsers.size() >= MAX_REMOTE_USERS) {
+                remoteUsers.clear();
+            }
+
+            user = remoteUsers.computeIfAbsent(key, ignored -> new User(name, origin + "/" + ipAddress, color));
+        }
+
+        return user;
+    }
+
+    private void writeNotice(String message) {
+        log.info(message);
+
+        long start = System.nanoTime();
+        Notice notice = new Notice(message);
+
+        for (ClientHandler clientHandler : sessionRegistry.getSessions()) {
             if (clientHandler.isRunning()) {
-                clientHandler.writeCustomMessage("<b>" + message + "</b>");
+                clientHandler.writeNotice(notice);
+            }
+        }
+
+        metrics.getBroadcastFanOut().recordSince(start);
+    }
+
+    public CommandExecutor getCommandExecutor() {
+        return commandExecutor;
+    }
+
+    public HtmlSanitizer getHtmlSanitizer() {
+        return htmlSanitizer;
+    }
+
+    public ServerConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Log output for file or standard output, see {@link ServerLog}.
+     */
+    private ServerLog createLog() {
+        RotatingFileOutputStream file = null;
+        String fileName = config.getString("log.file", null);
+
+        if (fileName != null) {
+            try {
+                file = new RotatingFileOutputStream(Paths.get(fileName), config.getLong("log.file.size", 10 * 1024 * 1024), config.getInt("log.file.count", 5));
+            } catch (IOException e) {
+                e.printStackTrace();
             }
         }
+
+        return new ServerLog(config.getInt("log.buffer.capacity", 16384), config.getInt("log.chat.sample.rate", 10), file, metrics);
+    }
+
+    /**
+     * Writes what the journal and the log still have queued. Runs when the JVM shuts down.
+     */
+    private void shutdown() {
+        if (idleMonitor != null) {
+            idleMonitor.stop();
+        }
+
+        if (clusterNode != null) {
+            clusterNode.close();
+        }
+
+        if (messageJournal != null) {
+            messageJournal.close();
+        }
+
+        log.close();
+    }
+
+    public ServerLog getLog() {
+        return log;
+    }
+
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public OutboundQueue createOutboundQueue() {
+        return new OutboundQueue(config.getInt("outbound.capacity", 1024), outboundOverflowPolicy, metrics.getOutboundFramesDropped());
     }
 
     public String getCurrentUsersString() {
-        return "<b>Currently connected: [" + clientHandlers.stream().filter(ClientHandler::isRunning).map(ch -> ch.getUser().getName()).collect(Collectors.joining(", ")) + "]</b>";
+        String userNames = sessionRegistry.getUserNames();
+
+        if (clusterNode != null) {
+            String remoteUserNames = clusterNode.getRemoteUserNames();
+
+            if (!remoteUserNames.isEmpty()) {
+                userNames = userNames.isEmpty() ? remoteUserNames : userNames + ", " + remoteUserNames;
+            }
+        }
+
+        return "<b>Currently connected: [" + userNames + "]</b>";
     }
 
     public User getUserByUsername(String username) {
-        return clientHandlers.stream().filter(ClientHandler::isRunning).map(ClientHandler::getUser).filter(user -> user.getName().equals(username)).findFirst().orElse(null);
+        return sessionRegistry.getConnectedUser(username);
     }
 
-    public List<Message> getLatestMessages(int startIndex) {
-        return messages.subList(startIndex, messages.size());
+    public SessionRegistry getSessionRegistry() {
+        return sessionRegistry;
     }
 
-    public int getCurrentNumberOfMessages() {
-        return messages.size();
+    public RoomRegistry getRoomRegistry() {
+        return roomRegistry;
     }
 
-    public void addMessage(Message message) {
-        messages.add(message);
+    /**
+     * Registers a new session and subscribes it to the default room.
+     */
+    public void addClientHandler(ClientHandler clientHandler) {
+        sessionRegistry.addSession(clientHandler);
+        roomRegistry.join(roomRegistry.getDefaultRoom().getName(), clientHandler);
+        publishPresence();
+    }
+
+    /**
+     * Forgets a session that has been closed or lost its connection and unsubscribes it from all its rooms.
+     */
+    public void removeClientHandler(ClientHandler clientHandler) {
+        if (sessionRegistry.removeSession(clientHandler)) {
+            connectionLimiter.release(clientHandler.getUser().getIpAddress());
+        }
+
+        if (idleMonitor != null) {
+            idleMonitor.unwatch(clientHandler);
+        }
 
-        for (ClientHandler clientHandler : clientHandlers) {
-            clientHandler.writeCurrentMessages();
+        for (RoomSubscription subscription : clientHandler.getSubscriptions()) {
+            roomRegistry.leave(subscription);
         }
+
+        publishPresence();
     }
 
-    public boolean isUsernameAlreadyInUse(String username) {
-        return clientHandlers.stream().map(c -> c.getUser().getName().toLowerCase()).anyMatch(c -> c.equals(username.toLowerCase()));
+    private void publishPresence() {
+        if (clusterNode != null) {
+            clusterNode.publishPresence();
+        }
     }
 
-    private void initCanteenMenuHandler() {
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(new Date());
+    /**
+     * Returns the message log of the default room, which is the one backed by the journal.
+     */
+    public MessageLog getMessageLog() {
+        return messageLog;
+    }
 
-        String canteenURL = "http://boeblingen.eurest.de/assets/technologie-and-businesspark-boeblingen/restaurant-boeblingen/Microsite/Restaurant-ESS-36-Speiseplan-KW-";
-        canteenURL += new DecimalFormat("00").format(cal.get(Calendar.WEEK_OF_YEAR)) + "-" + cal.get(Calendar.YEAR) + ".pdf";
+    /**
+     * Posts the message to the default room.
+     */
+    public void addMessage(Message message) {
+        addMessage(roomRegistry.getDefaultRoom(), message);
+    }
+
+    public void addMessage(ChatRoom room, Message message) {
+        long start = System.nanoTime();
+
+        room.addMessage(message);
+
+        metrics.getBroadcastFanOut().recordSince(start);
+
+        if (clusterNode != null) {
+            User author = message.getUser();
+            clusterNode.publishMessage(message.getRoomName(), author.getName(), author.getIpAddress(), author.getColor(), message.getContent(), message.getDate().toInstant().toEpochMilli());
+        }
+    }
+
+    private MessageJournal openMessageJournal() {
+        if (!config.getBoolean("journal.enabled", true)) {
+            return null;
+        }
 
         try {
-            canteenMenuHandler = new CanteenMenuHandler(canteenURL, Calendar.WEEK_OF_YEAR);
+            return new MessageJournal(
+                    Paths.get(config.getString("journal.dir", "journal")),
+                    config.getLong("journal.segment.size", 16 * 1024 * 1024),
+                    config.getInt("journal.segments", 16),
+                    config.getBoolean("journal.sync", true),
+                    metrics,
+                    log
+            );
         } catch (IOException e) {
-            e.printStackTrace();
+            log.error("Couldn't open the journal, messages won't be persisted.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads the latest messages back from the journal and recognizes their authors again, so users reconnecting from
+     * the same address keep their name and get the history they missed.
+     */
+    private void restoreMessages() {
+        long start = System.nanoTime();
+        List<Message> messages;
+
+        try {
+            messages = messageJournal.readLatest(messageLog.getCapacity());
+        } catch (IOException e) {
+            log.error("Couldn't restore the messages from the journal.", e);
+            return;
+        }
+
+        messageLog.restore(messages);
+
+        Map<String, User> latestUsersByIpAddress = new HashMap<>();
+
+        for (Message message : messages) {
+            latestUsersByIpAddress.put(message.getUser().getIpAddress(), message.getUser());
         }
+
+        for (User user : latestUsersByIpAddress.values()) {
+            sessionRegistry.addUser(user);
+        }
+
+        userCounter.set(latestUsersByIpAddress.size());
+
+        log.info("Restored " + messages.size() + " messages from the journal in " + (System.nanoTime() - start) / 1_000_000 + " ms.");
+    }
+
+    public boolean isUsernameAlreadyInUse(String username) {
+        return sessionRegistry.isUsernameInUse(username);
     }
 }
@@ -1,216 +1,412 @@
 package com.company;
 
-import org.jsoup.Jsoup;
-import org.jsoup.safety.Whitelist;
-
-import java.io.*;
-import java.net.Socket;
-import java.nio.charset.StandardCharsets;
-import java.util.List;
-import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-public class ClientHandler extends Thread {
-    private final ChatServer chatServer;
-
-    private final Socket socket;
-    private final BufferedReader reader;
-    private final PrintWriter writer;
+import com.company.logging.ServerLog;
+import com.company.metrics.ServerMetrics;
+import com.company.ratelimit.RateLimiter;
+import com.company.ratelimit.TokenBucket;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Protocol state of one connected client. The transport specific subclasses feed received lines into
+ * {@link #handleReceivedLine(String)}. Output never touches the socket on the calling thread: it is encoded into the
+ * client's {@link OutboundQueue} and the subclass drains the queue on its own writer.
+ */
+public abstract class ClientHandler {
+    private static final int MAX_ANNOUNCED_USERS = 1024;
+
+    /**
+     * Answer to a ping. It only counts as activity and is neither rate limited nor logged.
+     */
+    public static final String PONG = "\\pong";
+
+    protected final ChatServer chatServer;
 
     private final User user;
-    private final Map<String, ICommand> commands;
-    private final Whitelist whitelist;
-    private final Timer messageWritingTimer;
-
-    private int messageCounter = 0;
-    private boolean initialized = false;
-    private boolean isRunning;
-    private boolean messageWritingLock = false;
+    private final long sessionId;
+    private final CommandExecutor commandExecutor;
+    private final HtmlSanitizer htmlSanitizer;
+    private final OutboundQueue outboundQueue;
+    private final ServerMetrics metrics;
+    private final ServerLog log;
+    private final RateLimiter rateLimiter;
+    private final TokenBucket rateLimitBucket;
+    private final ConcurrentMap<String, RoomSubscription> subscriptions;
+
+    private final ConcurrentMap<Long, String> announcedUserNames;
+
+    private volatile ChatRoom currentRoom;
+    private volatile boolean isBinary;
+    private volatile boolean isRunning;
+    private volatile long lastActivityNanos;
+    private volatile long lastWriteNanos;
 
     private final int maximumMessageLength = 250;
-    private final int messageWritingLockTreshhold = 200;
-    private final String commandPattern = "\\\\(\\w+)(\\s([a-zA-Z0-9äöüÄÖÜ]+))?";
 
-    public ClientHandler(ChatServer chatServer, Socket socket, Map<String, ICommand> commands, User user, Whitelist whitelist) throws IOException {
+    protected ClientHandler(ChatServer chatServer, User user) {
         this.chatServer = chatServer;
-        this.socket = socket;
-        this.commands = commands;
         this.user = user;
-        this.whitelist = whitelist;
-
-        reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
-        writer = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
 
-        messageWritingTimer = new Timer();
+        sessionId = chatServer.getSessionRegistry().nextSessionId();
+        commandExecutor = chatServer.getCommandExecutor();
+        htmlSanitizer = chatServer.getHtmlSanitizer();
+        rateLimiter = chatServer.getRateLimiter();
+        rateLimitBucket = rateLimiter.createSessionBucket();
+        outboundQueue = chatServer.createOutboundQueue();
+        metrics = chatServer.getMetrics();
+        log = chatServer.getLog();
+        subscriptions = new ConcurrentHashMap<>();
+        announcedUserNames = new ConcurrentHashMap<>();
+        currentRoom = chatServer.getRoomRegistry().getDefaultRoom();
 
         isRunning = true;
+        lastActivityNanos = System.nanoTime();
+        lastWriteNanos = lastActivityNanos;
     }
 
-    @Override
-    public void run() {
-        String received;
-        isRunning = true;
+    /**
+     * Makes sure the writer drains the outbound queue soon. Called after every frame that was added to the queue.
+     */
+    protected abstract void scheduleFlush();
+
+    /**
+     * Closes the underlying connection, after writing what is still queued if possible.
+     */
+    protected abstract void close();
+
+    /**
+     * Closes the underlying connection right away, dropping what is still queued. Used for connections that are
+     * presumed dead, where writing might block.
+     */
+    protected void abort() {
+        close();
+    }
+
+    protected OutboundQueue getOutboundQueue() {
+        return outboundQueue;
+    }
+
+    /**
+     * Queues a single line for the client (as a notice if it uses the binary protocol).
+     */
+    protected void write(String line) {
+        writeFrame(isBinary ? BinaryFrames.encodeNotice(line) : Frames.encodeLine(line));
+    }
+
+    /**
+     * Queues a notice that is shared with other clients.
+     */
+    public void writeNotice(Notice notice) {
+        writeFrame(isBinary ? notice.getBinaryFrame() : notice.getFrame());
+    }
+
+    /**
+     * Queues a chat message, highlighted if the client's user is mentioned in it.
+     */
+    void writeMessage(Message message) {
+        boolean isMentioned = message.getRecipients().contains(user);
+
+        if (isBinary) {
+            announceUser(message.getUser());
+            writeFrame(message.getBinaryFrame(isMentioned));
+        } else {
+            writeFrame(isMentioned ? message.getMentionFrame() : message.getFrame());
+        }
+    }
+
+    /**
+     * Queues a message that is replayed on request. Text clients see its sequence number in front, binary clients
+     * have it in the frame anyway.
+     */
+    void writeHistoryMessage(Message message) {
+        if (isBinary) {
+            writeMessage(message);
+        } else {
+            write("#" + message.getSequence() + " " + message);
+        }
+    }
+
+    /**
+     * Queues a private message the client's user has sent or received.
+     */
+    void writePrivateMessage(User sender, User recipient, String content) {
+        boolean isSent = user.equals(sender);
+
+        if (isBinary) {
+            User otherUser = isSent ? recipient : sender;
+
+            announceUser(otherUser);
+            writeFrame(BinaryFrames.encode(isSent ? BinaryFrames.PRIVATE_SENT : BinaryFrames.PRIVATE_RECEIVED, -1, otherUser.getId(),
+                    otherUser.getColorIndex(), System.currentTimeMillis(), content));
+        } else if (isSent) {
+            write("<i>(private to " + recipient.getName() + ")</i> <b color=\"" + sender.getColor() + "\">" + sender.getName() + "</b>:\t" + content);
+        } else {
+            write("<i>(private)</i> <b color=\"" + sender.getColor() + "\">" + sender.getName() + "</b>:\t" + content);
+        }
+    }
+
+    /**
+     * Sends the user's id, name and color to a binary client unless it already knows them. The name is remembered only
+     * after the frame is queued, so no message of that user can overtake it. At most {@value #MAX_ANNOUNCED_USERS}
+     * users are remembered; beyond that the memory starts over and authors are simply announced again.
+     */
+    private void announceUser(User author) {
+        String name = author.getName();
 
-        while (isRunning) {
-            try {
-                if (!initialized) {
-                    writeCurrentMessages();
-
-                    initialized = true;
-                }
-
-                received = reader.readLine();
-
-                if (received != null && !messageWritingLock) {
-                    handleReceivedString(received);
-                } else if(received != null) {
-                    System.out.println(user.getName() + " tried to spam messages.");
-                }
-            } catch (IOException e) {
-                isRunning = false;
-
-                switch (e.getMessage()) {
-                    case "Connection reset":
-                    case "socket closed":
-                        break;
-                    default:
-                        e.printStackTrace();
-                        break;
-                }
-
-                chatServer.broadcastMessage("The user '" + user.getName() + "' has been disconnected from the server.");
-                System.out.println("Client '" + user.getName() + "' has been disconnected from the server.");
-            } catch (Exception e) {
-                e.printStackTrace();
+        if (!name.equals(announcedUserNames.get(author.getId()))) {
+            writeFrame(BinaryFrames.encodeUser(author));
+
+            if (announcedUserNames.size() >= MAX_ANNOUNCED_USERS) {
+                announcedUserNames.clear();
             }
+
+            announcedUserNames.put(author.getId(), name);
         }
+    }
 
-        try {
-            socket.close();
-            writer.close();
-            reader.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+    public boolean isBinary() {
+        return isBinary;
+    }
+
+    /**
+     * Switches between the text and the binary protocol. A binary client is told its own user first.
+     */
+    public void setBinary(boolean isBinary) {
+        this.isBinary = isBinary;
+
+        if (isBinary) {
+            announcedUserNames.clear();
+            announceUser(user);
         }
     }
 
-    private void handleReceivedString(String received) {
-        messageWritingLock = true;
+    /**
+     * Queues an already encoded frame. Frames may be shared between clients and are never modified.
+     */
+    void writeFrame(byte[] frame) {
+        if (!isRunning) {
+            return;
+        }
+
+        if (outboundQueue.offer(frame)) {
+            metrics.getMessagesOut().increment();
+            scheduleFlush();
+        } else {
+            log.info("Client '" + user.getName() + "' can't keep up with its messages and will be disconnected.");
+            exit();
+        }
+    }
+
+    /**
+     * Called by the transport after it has written bytes to the connection.
+     */
+    protected void recordBytesWritten(long bytes) {
+        if (bytes > 0) {
+            metrics.getBytesWritten().add(bytes);
+            lastWriteNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Returns true while output is waiting to be written. Transports that hold frames outside the queue while writing
+     * them add those.
+     */
+    public boolean hasPendingOutput() {
+        return !outboundQueue.isEmpty();
+    }
+
+    protected void initialize() {
+        writeCurrentMessages();
+    }
+
+    protected void handleReceivedLine(String received) {
+        metrics.getMessagesIn().increment();
+        lastActivityNanos = System.nanoTime();
 
-        messageWritingTimer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                messageWritingLock = false;
+        if (received.equals(PONG)) {
+            return;
+        }
+
+        if (rateLimiter.tryAcquire(rateLimitBucket, user.getIpAddress())) {
+            handleReceivedString(received);
+        } else {
+            metrics.getSpamRejections().increment();
+            log.info(user.getName() + " tried to spam messages.");
+        }
+    }
+
+    protected void handleDisconnect(IOException e) {
+        isRunning = false;
+
+        chatServer.removeClientHandler(this);
+
+        if (e != null) {
+            switch (String.valueOf(e.getMessage())) {
+                case "Connection reset":
+                case "socket closed":
+                case "Socket closed":
+                    break;
+                default:
+                    log.error("The connection of '" + user.getName() + "' failed.", e);
+                    break;
             }
-        }, messageWritingLockTreshhold);
+        }
 
-        System.out.println(user.getName() + ": " + received);
+        chatServer.broadcastMessage("The user '" + user.getName() + "' has been disconnected from the server.");
+        log.info("Client '" + user.getName() + "' has been disconnected from the server.");
+    }
+
+    private void handleReceivedString(String received) {
+        log.chat(user.getName(), received);
 
         if (received.startsWith("\\")) {
             handleCommand(received);
         } else if (received.length() > maximumMessageLength) {
-            writer.println("Your message is too long. Maximum of 250 characters is allowed.");
-            writer.flush();
+            write("Your message is too long. Maximum of 250 characters is allowed.");
         } else if (received.length() > 0) {
             handleMessage(received);
         }
     }
 
     private void handleCommand(String received) {
-        Pattern pattern = Pattern.compile(commandPattern);
-        Matcher matcher = pattern.matcher(received);
+        ChatLineParser.ParsedCommand parsedCommand = ChatLineParser.parseCommand(received);
 
-        if (matcher.find()) {
-            ICommand command = commands.get(matcher.group(1));
-
-            if (command != null) {
-                writeCustomMessage("Executing command '" + matcher.group(1) + "'.");
-                command.function(this, matcher.group(3));
+        if (parsedCommand != null) {
+            if (commandExecutor.contains(parsedCommand.getName())) {
+                writeCustomMessage("Executing command '" + parsedCommand.getName() + "'.");
+                commandExecutor.execute(this, parsedCommand.getName(), parsedCommand.getArgument());
             } else {
-                writeCustomMessage("Unknown command '" + matcher.group(1) + "'.");
+                writeCustomMessage("Unknown command '" + parsedCommand.getName() + "'.");
             }
         } else {
             writeCustomMessage("Couldn't parse command.");
         }
     }
 
-    private void handleMessage(String received) {
-        String cleanContent = Jsoup.clean(received, whitelist);
+    void handleMessage(String received) {
+        String cleanContent = htmlSanitizer.clean(received);
 
-        Message message = new Message(user, cleanContent);
+        ChatRoom room = currentRoom;
+        Message message = new Message(user, cleanContent, room.isDefault() ? null : room.getName());
 
-        Pattern pattern = Pattern.compile("(@(\\w+))+");
-        Matcher matcher = pattern.matcher(cleanContent);
-        while (matcher.find()) {
-            String recipientName = matcher.group(2);
+        ChatLineParser.forEachMention(cleanContent, recipientName -> {
             User recipient = chatServer.getUserByUsername(recipientName);
             if (recipient != null) {
                 message.addRecipient(recipient);
             }
-        }
+        });
 
-        chatServer.addMessage(message);
+        chatServer.addMessage(room, message);
     }
 
     public boolean isRunning() {
         return isRunning;
     }
 
+    /**
+     * Queues the messages of every subscribed room that this session hasn't received yet.
+     */
     public void writeCurrentMessages() {
-        int currentNumberOfMessages = chatServer.getCurrentNumberOfMessages();
-        if (currentNumberOfMessages > messageCounter) {
-            List<Message> messages = chatServer.getLatestMessages(messageCounter);
-
-            StringBuilder messagesString = new StringBuilder();
-
-            for (Message message : messages) {
-                List<User> recipients = message.getRecipients();
-                if (recipients.contains(user)) {
-                    messagesString.append("<b color=\"")
-                            .append(message.getUser().getColor())
-                            .append("\">")
-                            .append(message.getUser().getName())
-                            .append("</b>:\t")
-                            .append("<u>")
-                            .append(message.getContent())
-                            .append("</u>");
-                } else {
-                    messagesString.append(message);
-                }
-
-                if (messages.indexOf(message) != messages.size() - 1) {
-                    messagesString.append("\n");
-                }
-            }
+        for (RoomSubscription subscription : subscriptions.values()) {
+            subscription.writeCurrentMessages();
+        }
+    }
 
-            writer.println(messagesString);
-            writer.flush();
+    /**
+     * Returns the room the session's messages are posted to.
+     */
+    public ChatRoom getCurrentRoom() {
+        return currentRoom;
+    }
 
-            messageCounter = currentNumberOfMessages;
-        }
+    public void setCurrentRoom(ChatRoom currentRoom) {
+        this.currentRoom = currentRoom;
+    }
+
+    /**
+     * Returns the subscription to the room with the given (lower-cased) name, or null if the session isn't in it.
+     */
+    public RoomSubscription getSubscription(String roomKey) {
+        return subscriptions.get(roomKey);
+    }
+
+    public Collection<RoomSubscription> getSubscriptions() {
+        return subscriptions.values();
+    }
+
+    void addSubscription(String roomKey, RoomSubscription subscription) {
+        subscriptions.put(roomKey, subscription);
+    }
+
+    void removeSubscription(String roomKey, RoomSubscription subscription) {
+        subscriptions.remove(roomKey, subscription);
     }
 
     public void writeCustomMessage(String message) {
-        writer.println(message);
-        writer.flush();
+        write(message);
     }
 
-    public void exit() {
-        try {
-            socket.close();
-            writer.close();
-            reader.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * Asks an idle binary client for a sign of life with a PING frame, which it answers with {@link #PONG}.
+     */
+    void writePing() {
+        writeFrame(BinaryFrames.encode(BinaryFrames.PING, -1, 0, BinaryFrames.NO_COLOR, System.currentTimeMillis(), ""));
+    }
+
+    /**
+     * Closes the connection of a session that didn't answer a ping or whose output stalled, and removes the session.
+     */
+    void disconnectIdle() {
+        if (!isRunning) {
+            return;
         }
 
         isRunning = false;
+
+        chatServer.removeClientHandler(this);
+        abort();
+
+        chatServer.broadcastMessage("The user '" + user.getName() + "' has been disconnected for not responding.");
+        log.info("Client '" + user.getName() + "' has been disconnected after it stopped responding.");
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} of the last line received from the client.
+     */
+    public long getLastActivityNanos() {
+        return lastActivityNanos;
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} of the last time the transport got bytes onto the connection.
+     */
+    public long getLastWriteNanos() {
+        return lastWriteNanos;
+    }
+
+    public void exit() {
+        isRunning = false;
+
+        chatServer.removeClientHandler(this);
+
+        close();
     }
 
     public User getUser() {
         return user;
     }
+
+    public long getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * Creates the handler for a newly accepted connection once the server has assigned its user.
+     */
+    public interface Factory<T extends ClientHandler> {
+        T create(User user) throws IOException;
+    }
 }
@@ -0,0 +1,190 @@
+package com.company;
+
+import com.company.logging.ServerLog;
+import com.company.metrics.ServerMetrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the chat commands. Cheap commands run inline on the thread that received the line. All others run on a small,
+ * bounded pool, so a slow one never holds up the client's input: each of them has a timeout after which it is
+ * cancelled and a limit on how many of its executions may run at once, and a client can only have one of them running
+ * at a time. Both limits count a command until it has really finished, also if it timed out but ignores the interrupt.
+ * Execution times are recorded per command.
+ */
+public class CommandExecutor {
+    private final Map<String, Command> commands;
+    private final Set<Long> busySessions;
+    private final ThreadPoolExecutor executor;
+    private final ServerMetrics metrics;
+    private final ServerLog log;
+
+    public CommandExecutor(int threads, int queueCapacity, ServerMetrics metrics, ServerLog log) {
+        this.metrics = metrics;
+        this.log = log;
+
+        commands = new TreeMap<>();
+        busySessions = ConcurrentHashMap.newKeySet();
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "command-executor-" + threadCounter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Registers a command that runs on the receiving thread. Only meant for commands that never block.
+     */
+    public void addInline(String name, ICommand command) {
+        commands.put(name, new Command(command, 0, null));
+    }
+
+    /**
+     * Registers a command that runs on the pool, is cancelled after timeoutMillis and runs at most maxConcurrent times
+     * at once.
+     */
+    public void addAsync(String name, ICommand command, long timeoutMillis, int maxConcurrent) {
+        commands.put(name, new Command(command, timeoutMillis, new Semaphore(maxConcurrent)));
+    }
+
+    public boolean contains(String name) {
+        return commands.containsKey(name);
+    }
+
+    /**
+     * Returns the names of all commands in alphabetical order.
+     */
+    public Set<String> getNames() {
+        return Collections.unmodifiableSet(commands.keySet());
+    }
+
+    /**
+     * Executes the command for the client. The future completes once the command is done; inline commands are done
+     * when this returns. Replies go straight to the client, including the one explaining why a command didn't run.
+     */
+    public CompletableFuture<Void> execute(ClientHandler clientHandler, String name, String argument) {
+        Command command = commands.get(name);
+        long start = System.nanoTime();
+
+        if (command.permits == null) {
+            command.command.function(clientHandler, argument);
+            metrics.getCommandDuration(name).recordSince(start);
+
+            return CompletableFuture.completedFuture(null);
+        }
+
+        if (!busySessions.add(clientHandler.getSessionId())) {
+            return reject(clientHandler, "Please wait until your previous command has finished.");
+        }
+
+        if (!command.permits.tryAcquire()) {
+            busySessions.remove(clientHandler.getSessionId());
+            return reject(clientHandler, "Too many '" + name + "' commands are running right now. Please try again later.");
+        }
+
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        Execution execution = new Execution();
+
+        try {
+            // the permit and the busy flag are only released once the task is really done, even after a timeout
+            executor.execute(() -> {
+                try {
+                    if (execution.start()) {
+                        command.command.function(clientHandler, argument);
+                        metrics.getCommandDuration(name).recordSince(start);
+                    }
+
+                    result.complete(null);
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    execution.finish();
+                    command.permits.release();
+                    busySessions.remove(clientHandler.getSessionId());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            command.permits.release();
+            busySessions.remove(clientHandler.getSessionId());
+            return reject(clientHandler, "The server is too busy to execute '" + name + "' right now. Please try again later.");
+        }
+
+        return result.orTimeout(command.timeoutMillis, TimeUnit.MILLISECONDS).whenComplete((ignored, e) -> {
+            if (e instanceof TimeoutException) {
+                execution.timeOut();
+                metrics.getCommandTimeouts().increment();
+                clientHandler.writeCustomMessage("The command '" + name + "' took too long and has been cancelled.");
+            } else if (e != null) {
+                log.error("The command '" + name + "' failed.", e);
+                clientHandler.writeCustomMessage("The command '" + name + "' failed.");
+            }
+        });
+    }
+
+    private CompletableFuture<Void> reject(ClientHandler clientHandler, String reply) {
+        metrics.getCommandRejections().increment();
+        clientHandler.writeCustomMessage(reply);
+
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Tracks the thread running a command, so a timeout interrupts exactly that command: never a later task of the
+     * same pool thread, and a command that is still queued doesn't run at all.
+     */
+    private static class Execution {
+        private Thread thread;
+        private boolean isTimedOut;
+
+        synchronized boolean start() {
+            if (isTimedOut) {
+                return false;
+            }
+
+            thread = Thread.currentThread();
+
+            return true;
+        }
+
+        synchronized void finish() {
+            thread = null;
+
+            // clears an interrupt of a timeout that came too late to matter
+            Thread.interrupted();
+        }
+
+        synchronized void timeOut() {
+            isTimedOut = true;
+
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+    }
+
+    private static class Command {
+        private final ICommand command;
+        private final long timeoutMillis;
+        private final Semaphore permits;
+
+        private Command(ICommand command, long timeoutMillis, Semaphore permits) {
+            this.command = command;
+            this.timeoutMillis = timeoutMillis;
+            this.permits = permits;
+        }
+    }
+}
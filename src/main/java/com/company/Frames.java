@@ -0,0 +1,18 @@
+package com.company;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encoding of the line based wire format. A frame is one UTF-8 encoded line including its line separator, ready to be
+ * written to any number of clients as it is.
+ */
+public final class Frames {
+    public static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private Frames() {
+    }
+
+    public static byte[] encodeLine(String line) {
+        return (line + LINE_SEPARATOR).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,81 @@
+package com.company;
+
+import java.net.InetAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resolves the host names of client addresses on a few background threads. A reverse DNS lookup can block for
+ * seconds, so nobody waits for it: callers get a future, and lookups of the same address share one entry of the cache
+ * until it expires. If the lookups are disabled, the address itself is used as host name.
+ */
+public class HostNameResolver {
+    private final boolean isEnabled;
+    private final long expiryNanos;
+    private final int maxEntries;
+    private final ExecutorService resolver;
+    private final ConcurrentMap<String, CacheEntry> cache;
+
+    public HostNameResolver(boolean isEnabled, int threads, long expirySeconds, int maxEntries) {
+        this.isEnabled = isEnabled;
+        this.expiryNanos = TimeUnit.SECONDS.toNanos(expirySeconds);
+        this.maxEntries = maxEntries;
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        resolver = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "host-name-resolver-" + threadCounter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        cache = new ConcurrentHashMap<>();
+    }
+
+    public CompletableFuture<String> resolve(InetAddress address) {
+        String ipAddress = address.getHostAddress();
+
+        if (!isEnabled) {
+            return CompletableFuture.completedFuture(ipAddress);
+        }
+
+        long now = System.nanoTime();
+        CacheEntry entry = cache.get(ipAddress);
+
+        if (entry == null || now - entry.createdAt > expiryNanos) {
+            if (cache.size() >= maxEntries) {
+                cache.values().removeIf(cached -> now - cached.createdAt > expiryNanos);
+
+                if (cache.size() >= maxEntries) {
+                    cache.clear();
+                }
+            }
+
+            entry = cache.compute(ipAddress, (key, cached) -> cached != null && now - cached.createdAt <= expiryNanos ? cached : lookUp(address, now));
+        }
+
+        return entry.hostName;
+    }
+
+    private CacheEntry lookUp(InetAddress address, long now) {
+        CompletableFuture<String> hostName = new CompletableFuture<>();
+
+        resolver.execute(() -> hostName.complete(address.getHostName()));
+
+        return new CacheEntry(now, hostName);
+    }
+
+    private static class CacheEntry {
+        private final long createdAt;
+        private final CompletableFuture<String> hostName;
+
+        private CacheEntry(long createdAt, CompletableFuture<String> hostName) {
+            this.createdAt = createdAt;
+            this.hostName = hostName;
+        }
+    }
+}
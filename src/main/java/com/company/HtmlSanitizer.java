@@ -0,0 +1,86 @@
+package com.company;
+
+import org.jsoup.Jsoup;
+import org.jsoup.safety.Whitelist;
+
+/**
+ * Cleans user input with Jsoup, but only parses lines that can actually contain markup. A line without '<' and '&'
+ * can't contain tags or entities, so its cleaned form only differs from the input by escaped '>' and non-breaking
+ * spaces and by the normalized whitespace, which is produced here in a single pass without building a DOM.
+ */
+public class HtmlSanitizer {
+    private static final char NON_BREAKING_SPACE = '\u00A0';
+
+    private final Whitelist whitelist;
+
+    public HtmlSanitizer(Whitelist whitelist) {
+        this.whitelist = whitelist;
+    }
+
+    public String clean(String input) {
+        int length = input.length();
+        boolean isClean = true;
+        boolean previousWasWhitespace = true;
+
+        for (int i = 0; i < length; i++) {
+            char c = input.charAt(i);
+
+            if (c == '<' || c == '&' || (c < ' ' && !isWhitespace(c))) {
+                return Jsoup.clean(input, whitelist);
+            }
+
+            if (isWhitespace(c)) {
+                if (c != ' ' || previousWasWhitespace) {
+                    isClean = false;
+                }
+
+                previousWasWhitespace = true;
+            } else {
+                if (c == '>' || c == NON_BREAKING_SPACE) {
+                    isClean = false;
+                }
+
+                previousWasWhitespace = false;
+            }
+        }
+
+        if (isClean && !previousWasWhitespace) {
+            return input;
+        }
+
+        return normalize(input);
+    }
+
+    private static String normalize(String input) {
+        StringBuilder cleaned = new StringBuilder(input.length() + 16);
+        boolean pendingSpace = false;
+
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+
+            if (isWhitespace(c)) {
+                pendingSpace = cleaned.length() > 0;
+                continue;
+            }
+
+            if (pendingSpace) {
+                cleaned.append(' ');
+                pendingSpace = false;
+            }
+
+            if (c == '>') {
+                cleaned.append("&gt;");
+            } else if (c == NON_BREAKING_SPACE) {
+                cleaned.append("&nbsp;");
+            } else {
+                cleaned.append(c);
+            }
+        }
+
+        return cleaned.toString();
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r';
+    }
+}
@@ -1,5 +1,9 @@
 package com.company;
 
+/**
+ * Body of a chat command. It writes its replies to the client handler itself and may be called on the receiving thread
+ * or on the command executor, see {@link CommandExecutor}.
+ */
 public interface ICommand {
     void function(ClientHandler clientHandler, String value);
 }
@@ -0,0 +1,140 @@
+package com.company;
+
+import com.company.logging.ServerLog;
+import com.company.metrics.ServerMetrics;
+import com.company.timer.HashedTimingWheel;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finds sessions that have gone silent. Every watched session has exactly one timeout on a shared
+ * {@link HashedTimingWheel}; receiving a line only updates the session's last activity time, the timeout is moved when
+ * it fires. A binary session that has been idle for the idle timeout gets a PING frame. If it doesn't answer within
+ * the ping timeout, its connection is closed and the session is removed.
+ * <p>
+ * Text clients can't answer a ping, and a person reading along without typing is idle but very much there, so text
+ * sessions are never reclaimed for being quiet. Instead their output is checked: if something has been waiting to
+ * be written and nothing got onto the connection for a whole ping timeout, the peer is gone or hopelessly stuck and
+ * the session is reclaimed the same way. Quiet dead text connections are found by TCP keepalive, which makes their
+ * next read fail (see the transports' accept pipeline).
+ */
+public class IdleMonitor {
+    private final HashedTimingWheel wheel;
+    private final long idleTimeoutNanos;
+    private final long pingTimeoutNanos;
+    private final ServerMetrics metrics;
+    private final ConcurrentMap<Long, Watch> watches;
+
+    public IdleMonitor(long idleTimeoutSeconds, long pingTimeoutSeconds, long tickMillis, ServerMetrics metrics, ServerLog log) {
+        this.idleTimeoutNanos = TimeUnit.SECONDS.toNanos(idleTimeoutSeconds);
+        this.pingTimeoutNanos = TimeUnit.SECONDS.toNanos(pingTimeoutSeconds);
+        this.metrics = metrics;
+
+        wheel = new HashedTimingWheel("idle-monitor", tickMillis, TimeUnit.MILLISECONDS, 512, log);
+        watches = new ConcurrentHashMap<>();
+    }
+
+    public void watch(ClientHandler clientHandler) {
+        Watch watch = new Watch(clientHandler);
+
+        // scheduled before it is published, so unwatch always finds a timeout to cancel
+        watch.schedule(idleTimeoutNanos);
+        watches.put(clientHandler.getSessionId(), watch);
+    }
+
+    public void unwatch(ClientHandler clientHandler) {
+        Watch watch = watches.remove(clientHandler.getSessionId());
+
+        if (watch != null && watch.timeout != null) {
+            watch.timeout.cancel();
+        }
+    }
+
+    public int getNumberOfWatchedSessions() {
+        return watches.size();
+    }
+
+    public void stop() {
+        wheel.stop();
+    }
+
+    private class Watch implements Runnable {
+        private final ClientHandler clientHandler;
+
+        private volatile HashedTimingWheel.Timeout timeout;
+        private boolean isPinged;
+        private boolean isOutputSuspected;
+        private long suspectedLastWriteNanos;
+
+        private Watch(ClientHandler clientHandler) {
+            this.clientHandler = clientHandler;
+        }
+
+        private void schedule(long delayNanos) {
+            timeout = wheel.schedule(this, delayNanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Runs on the wheel's thread whenever the session's timeout fires.
+         */
+        @Override
+        public void run() {
+            if (!clientHandler.isRunning() || watches.get(clientHandler.getSessionId()) != this) {
+                watches.remove(clientHandler.getSessionId(), this);
+                return;
+            }
+
+            if (clientHandler.isBinary()) {
+                checkActivity();
+            } else {
+                checkOutput();
+            }
+        }
+
+        private void checkActivity() {
+            long idleNanos = System.nanoTime() - clientHandler.getLastActivityNanos();
+
+            isOutputSuspected = false;
+
+            if (idleNanos < idleTimeoutNanos) {
+                isPinged = false;
+                schedule(idleTimeoutNanos - idleNanos);
+            } else if (!isPinged) {
+                isPinged = true;
+                metrics.getIdlePings().increment();
+                clientHandler.writePing();
+                schedule(pingTimeoutNanos);
+            } else {
+                reclaim();
+            }
+        }
+
+        /**
+         * Reclaims a text session once its pending output didn't move between two checks a ping timeout apart.
+         */
+        private void checkOutput() {
+            long lastWriteNanos = clientHandler.getLastWriteNanos();
+
+            isPinged = false;
+
+            if (!clientHandler.hasPendingOutput()) {
+                isOutputSuspected = false;
+                schedule(idleTimeoutNanos);
+            } else if (!isOutputSuspected || lastWriteNanos != suspectedLastWriteNanos) {
+                isOutputSuspected = true;
+                suspectedLastWriteNanos = lastWriteNanos;
+                schedule(pingTimeoutNanos);
+            } else {
+                reclaim();
+            }
+        }
+
+        private void reclaim() {
+            watches.remove(clientHandler.getSessionId(), this);
+            metrics.getIdleSessionsReclaimed().increment();
+            clientHandler.disconnectIdle();
+        }
+    }
+}
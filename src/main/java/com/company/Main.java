@@ -4,7 +4,7 @@ import java.io.IOException;
 
 public class Main {
     public static void main(String[] args) {
-        ChatServer chatServer = new ChatServer();
+        ChatServer chatServer = new ChatServer(ServerConfig.fromArgs(args));
 
         try {
             chatServer.start();
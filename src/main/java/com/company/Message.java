@@ -2,27 +2,68 @@ package com.company;
 
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 public class Message {
     private User user;
-    private List<User> recipients;
+    private final String authorName;
+    private Set<User> recipients;
     private ZonedDateTime date;
     private String content;
+    private final String roomName;
+    private long sequence = -1;
+    private final byte[] frame;
+    private volatile byte[] mentionFrame;
+    private volatile byte[] binaryFrame;
+    private volatile byte[] binaryMentionFrame;
 
     public Message(User user, String content) {
+        this(user, content, (String) null);
+    }
+
+    /**
+     * Creates a message posted to the room with the given name, or to the default room if the name is null. The room
+     * name is shown in front of the author.
+     */
+    public Message(User user, String content, String roomName) {
+        this(user, content, ZonedDateTime.now(ZoneId.of("Europe/Paris")), roomName);
+    }
+
+    /**
+     * Recreates a message of the default room that was posted at the given date, e.g. when it is read back from the
+     * journal.
+     */
+    public Message(User user, String content, ZonedDateTime date) {
+        this(user, content, date, null);
+    }
+
+    public Message(User user, String content, ZonedDateTime date, String roomName) {
         this.user = user;
+        this.authorName = user.getName();
         this.content = content;
-        recipients = new ArrayList<>();
-        date = ZonedDateTime.now(ZoneId.of("Europe/Paris"));
+        this.date = date;
+        this.roomName = roomName;
+        recipients = new LinkedHashSet<>();
+        frame = Frames.encodeLine(toString());
     }
 
     public User getUser() {
         return user;
     }
 
-    public List<User> getRecipients() {
+    /**
+     * Returns the author's name as it was when the message was posted; the user may have been renamed since.
+     */
+    public String getAuthorName() {
+        return authorName;
+    }
+
+    /**
+     * Returns the mentioned users in the order they were mentioned. Checking whether a user is among them is a hash
+     * lookup.
+     */
+    public Set<User> getRecipients() {
         return recipients;
     }
 
@@ -30,12 +71,79 @@ public class Message {
         recipients.add(user);
     }
 
+    public ZonedDateTime getDate() {
+        return date;
+    }
+
     public String getContent() {
         return content;
     }
 
+    /**
+     * Returns the name of the room the message was posted to, or null for the default room.
+     */
+    public String getRoomName() {
+        return roomName;
+    }
+
+    /**
+     * Returns the encoded line every client that isn't mentioned receives. It is rendered once when the message is
+     * posted and shared by all recipients, so it must not be modified.
+     */
+    public byte[] getFrame() {
+        return frame;
+    }
+
+    /**
+     * Returns the encoded line with the underlined content that mentioned users receive. It is rendered on first use
+     * and shared like {@link #getFrame()}.
+     */
+    public byte[] getMentionFrame() {
+        byte[] mentionFrame = this.mentionFrame;
+
+        if (mentionFrame == null) {
+            mentionFrame = Frames.encodeLine(getRoomPrefix() + "<b color=\"" + user.getColor() + "\">" + authorName + "</b>:\t<u>" + content + "</u>");
+            this.mentionFrame = mentionFrame;
+        }
+
+        return mentionFrame;
+    }
+
+    /**
+     * Returns the frame for clients using the binary protocol, see {@link BinaryFrames}. Both variants are encoded on
+     * first use (after the message got its sequence number) and shared.
+     */
+    public byte[] getBinaryFrame(boolean isMentioned) {
+        byte[] binaryFrame = isMentioned ? this.binaryMentionFrame : this.binaryFrame;
+
+        if (binaryFrame == null) {
+            binaryFrame = BinaryFrames.encode(isMentioned ? BinaryFrames.MENTION : BinaryFrames.MESSAGE, sequence, user.getId(), user.getColorIndex(),
+                    date.toInstant().toEpochMilli(), (roomName == null ? "" : roomName) + "\n" + content);
+
+            if (isMentioned) {
+                this.binaryMentionFrame = binaryFrame;
+            } else {
+                this.binaryFrame = binaryFrame;
+            }
+        }
+
+        return binaryFrame;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    private String getRoomPrefix() {
+        return roomName == null ? "" : "<i>#" + roomName + "</i> ";
+    }
+
     @Override
     public String toString() {
-        return "<b color=\"" + user.getColor() + "\">" + user.getName() + "</b>:\t" + content;
+        return getRoomPrefix() + "<b color=\"" + user.getColor() + "\">" + authorName + "</b>:\t" + content;
     }
 }
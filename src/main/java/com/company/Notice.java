@@ -0,0 +1,36 @@
+package com.company;
+
+/**
+ * A server notice that is sent to many clients. The text frame is encoded once and shared; the binary frame is
+ * encoded on first use.
+ */
+public class Notice {
+    private final String text;
+    private final byte[] frame;
+    private volatile byte[] binaryFrame;
+
+    public Notice(String text) {
+        this.text = text;
+
+        frame = Frames.encodeLine("<b>" + text + "</b>");
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public byte[] getFrame() {
+        return frame;
+    }
+
+    public byte[] getBinaryFrame() {
+        byte[] binaryFrame = this.binaryFrame;
+
+        if (binaryFrame == null) {
+            binaryFrame = BinaryFrames.encodeNotice(text);
+            this.binaryFrame = binaryFrame;
+        }
+
+        return binaryFrame;
+    }
+}
@@ -0,0 +1,79 @@
+package com.company;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded queue of encoded frames waiting to be written to one client. Any thread may offer frames, only the client's
+ * writer polls them. When the queue is full the overflow policy decides whether the oldest frame is dropped or the
+ * client has to be disconnected. Dropped frames are counted in a counter shared by all queues.
+ */
+public class OutboundQueue {
+    private final Queue<byte[]> frames;
+    private final AtomicInteger depth;
+    private final LongAdder droppedFrames;
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+
+    public OutboundQueue(int capacity, OverflowPolicy overflowPolicy, LongAdder droppedFrames) {
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.droppedFrames = droppedFrames;
+
+        frames = new ConcurrentLinkedQueue<>();
+        depth = new AtomicInteger();
+    }
+
+    /**
+     * Adds the frame to the queue. Returns false if the queue is full and the client has to be disconnected.
+     */
+    public boolean offer(byte[] frame) {
+        if (depth.incrementAndGet() > capacity) {
+            if (overflowPolicy == OverflowPolicy.DISCONNECT) {
+                depth.decrementAndGet();
+                droppedFrames.increment();
+                return false;
+            }
+
+            if (frames.poll() != null) {
+                depth.decrementAndGet();
+                droppedFrames.increment();
+            }
+        }
+
+        frames.add(frame);
+
+        return true;
+    }
+
+    public byte[] poll() {
+        byte[] frame = frames.poll();
+
+        if (frame != null) {
+            depth.decrementAndGet();
+        }
+
+        return frame;
+    }
+
+    public boolean isEmpty() {
+        return frames.isEmpty();
+    }
+
+    public void clear() {
+        while (poll() != null) {
+            // drop everything that is still pending
+        }
+    }
+
+    public int getDepth() {
+        return depth.get();
+    }
+
+    public enum OverflowPolicy {
+        DROP_OLDEST,
+        DISCONNECT
+    }
+}
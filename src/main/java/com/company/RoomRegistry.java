@@ -0,0 +1,99 @@
+package com.company;
+
+import com.company.history.MessageLog;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Index of all chat rooms by their lower-cased name. Rooms are created by the first session joining them and removed
+ * again when the last one leaves (except the default room). Joining and leaving only lock the affected room's entry
+ * in the map, never the whole registry.
+ */
+public class RoomRegistry {
+    private final ChatRoom defaultRoom;
+    private final int maxRooms;
+    private final int historyCapacity;
+    private final int replayCount;
+    private final boolean isSearchEnabled;
+    private final ConcurrentMap<String, ChatRoom> rooms;
+
+    /**
+     * @param replayCount number of the latest messages a session gets when it joins a room
+     */
+    public RoomRegistry(ChatRoom defaultRoom, int maxRooms, int historyCapacity, int replayCount, boolean isSearchEnabled) {
+        this.defaultRoom = defaultRoom;
+        this.maxRooms = maxRooms;
+        this.historyCapacity = historyCapacity;
+        this.replayCount = replayCount;
+        this.isSearchEnabled = isSearchEnabled;
+
+        rooms = new ConcurrentHashMap<>();
+        rooms.put(toKey(defaultRoom.getName()), defaultRoom);
+    }
+
+    public ChatRoom getDefaultRoom() {
+        return defaultRoom;
+    }
+
+    public ChatRoom getRoom(String name) {
+        return rooms.get(toKey(name));
+    }
+
+    /**
+     * Subscribes the session to the room, creating the room if it doesn't exist yet. Returns the (possibly already
+     * existing) subscription, or null if the room would have to be created but the maximum number of rooms is reached.
+     */
+    public RoomSubscription join(String name, ClientHandler clientHandler) {
+        RoomSubscription[] subscription = new RoomSubscription[1];
+
+        rooms.compute(toKey(name), (key, room) -> {
+            if (room == null) {
+                if (rooms.size() >= maxRooms) {
+                    return null;
+                }
+
+                room = new ChatRoom(name, new MessageLog(historyCapacity), false, isSearchEnabled);
+            }
+
+            subscription[0] = room.subscribe(clientHandler, replayCount);
+            clientHandler.addSubscription(key, subscription[0]);
+
+            return room;
+        });
+
+        return subscription[0];
+    }
+
+    /**
+     * Ends the subscription. A room other than the default one is removed once nobody is subscribed anymore.
+     */
+    public void leave(RoomSubscription subscription) {
+        ChatRoom room = subscription.getRoom();
+        String key = toKey(room.getName());
+
+        room.unsubscribe(subscription);
+        subscription.getClientHandler().removeSubscription(key, subscription);
+
+        rooms.computeIfPresent(key, (currentKey, currentRoom) ->
+                currentRoom.isDefault() || currentRoom.getNumberOfSubscribers() > 0 ? currentRoom : null);
+    }
+
+    /**
+     * Returns all rooms sorted by name.
+     */
+    public List<ChatRoom> getRooms() {
+        List<ChatRoom> sortedRooms = new ArrayList<>(rooms.values());
+        sortedRooms.sort(Comparator.comparing(room -> toKey(room.getName())));
+
+        return sortedRooms;
+    }
+
+    public static String toKey(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
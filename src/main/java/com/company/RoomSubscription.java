@@ -0,0 +1,111 @@
+package com.company;
+
+import com.company.history.MessageLog;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Membership of one session in one room. It keeps the session's cursor into the room's message log (the next
+ * sequence it wants to read), so every room is read independently of the others. A new subscription only replays the
+ * latest messages; older ones are paged in with "\history".
+ */
+public class RoomSubscription {
+    private final ChatRoom room;
+    private final ClientHandler clientHandler;
+    private final ReentrantLock messageCursorLock;
+    private final long replayStart;
+
+    private long messageCursor;
+    private volatile long historyCursor;
+
+    RoomSubscription(ChatRoom room, ClientHandler clientHandler, int replayCount) {
+        this.room = room;
+        this.clientHandler = clientHandler;
+
+        MessageLog messageLog = room.getMessageLog();
+
+        messageCursorLock = new ReentrantLock();
+        replayStart = Math.max(messageLog.getOldestSequence(), messageLog.getNextSequence() - replayCount);
+        messageCursor = replayStart;
+        historyCursor = replayStart;
+    }
+
+    public ChatRoom getRoom() {
+        return room;
+    }
+
+    public ClientHandler getClientHandler() {
+        return clientHandler;
+    }
+
+    /**
+     * Returns the sequence of the first message that was replayed when the subscription started.
+     */
+    public long getReplayStart() {
+        return replayStart;
+    }
+
+    /**
+     * Returns the sequence of the oldest message the session has been sent so far, where "\history" continues.
+     */
+    public long getHistoryCursor() {
+        return historyCursor;
+    }
+
+    public void setHistoryCursor(long historyCursor) {
+        this.historyCursor = historyCursor;
+    }
+
+    /**
+     * Queues all messages between the cursor and the end of the room's log. If the log has already dropped messages
+     * the cursor pointed at, a marker with the number of missed messages is queued first. The lock only keeps
+     * concurrent callers from queueing the same range twice or out of order; it is never held during socket I/O.
+     */
+    public void writeCurrentMessages() {
+        MessageLog messageLog = room.getMessageLog();
+
+        messageCursorLock.lock();
+        try {
+            long nextSequence = messageLog.getNextSequence();
+
+            if (nextSequence <= messageCursor) {
+                return;
+            }
+
+            long sequence = Math.max(messageCursor, messageLog.getOldestSequence());
+            long missedMessages = sequence - messageCursor;
+
+            for (; sequence < nextSequence; sequence++) {
+                Message message = messageLog.get(sequence);
+
+                if (message == null) {
+                    missedMessages++;
+                    continue;
+                }
+
+                if (missedMessages > 0) {
+                    writeMissedMessages(missedMessages);
+                    missedMessages = 0;
+                }
+
+                clientHandler.writeMessage(message);
+            }
+
+            if (missedMessages > 0) {
+                writeMissedMessages(missedMessages);
+            }
+
+            messageCursor = nextSequence;
+        } finally {
+            messageCursorLock.unlock();
+        }
+    }
+
+    private void writeMissedMessages(long missedMessages) {
+        if (room.isDefault()) {
+            clientHandler.write("<b>You have missed " + missedMessages + " messages.</b>");
+        } else {
+            clientHandler.write("<b>You have missed " + missedMessages + " messages in the room '" + room.getName() + "'.</b>");
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.company;
+
+import java.util.Properties;
+
+public class ServerConfig {
+    private static final String SYSTEM_PROPERTY_PREFIX = "chatserver.";
+
+    private final Properties properties;
+
+    public ServerConfig() {
+        properties = new Properties();
+    }
+
+    /**
+     * Reads options of the form "--name=value" (or "--name" for boolean flags). Options that are not given on the
+     * command line fall back to the system property "chatserver.name".
+     */
+    public static ServerConfig fromArgs(String[] args) {
+        ServerConfig config = new ServerConfig();
+
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Invalid option '" + arg + "'. Format: --name=value");
+            }
+
+            int separatorIndex = arg.indexOf('=');
+
+            if (separatorIndex < 0) {
+                config.set(arg.substring(2), "true");
+            } else {
+                config.set(arg.substring(2, separatorIndex), arg.substring(separatorIndex + 1));
+            }
+        }
+
+        return config;
+    }
+
+    public ServerConfig set(String name, String value) {
+        properties.setProperty(name, value);
+        return this;
+    }
+
+    public String getString(String name, String defaultValue) {
+        String value = properties.getProperty(name);
+
+        if (value == null) {
+            value = System.getProperty(SYSTEM_PROPERTY_PREFIX + name);
+        }
+
+        return value == null ? defaultValue : value;
+    }
+
+    public int getInt(String name, int defaultValue) {
+        String value = getString(name, null);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    public long getLong(String name, long defaultValue) {
+        String value = getString(name, null);
+        return value == null ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    public boolean getBoolean(String name, boolean defaultValue) {
+        String value = getString(name, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+}
@@ -0,0 +1,200 @@
+package com.company;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Index of all known users and currently connected sessions. Users are looked up by their lower-cased name and by IP
+ * address in constant time; every IP address belongs to exactly one user. A user stays known (and keeps its name
+ * reserved) after its last session is gone, so it is recognized again when it reconnects from the same address.
+ */
+public class SessionRegistry {
+    private final ConcurrentNavigableMap<Long, ClientHandler> sessions;
+    private final ConcurrentMap<String, User> usersByName;
+    private final ConcurrentMap<String, User> usersByIpAddress;
+    private final ConcurrentMap<String, Set<ClientHandler>> sessionsByIpAddress;
+    private final AtomicLong sessionIdCounter;
+    private final AtomicLong version;
+
+    private volatile UserListSnapshot userListSnapshot;
+
+    public SessionRegistry() {
+        sessions = new ConcurrentSkipListMap<>();
+        usersByName = new ConcurrentHashMap<>();
+        usersByIpAddress = new ConcurrentHashMap<>();
+        sessionsByIpAddress = new ConcurrentHashMap<>();
+        sessionIdCounter = new AtomicLong();
+        version = new AtomicLong();
+    }
+
+    public long nextSessionId() {
+        return sessionIdCounter.incrementAndGet();
+    }
+
+    /**
+     * Registers a new user. Returns false if its name or IP address already belongs to another user.
+     */
+    public boolean addUser(User user) {
+        String key = toKey(user.getName());
+
+        if (usersByName.putIfAbsent(key, user) != null) {
+            return false;
+        }
+
+        if (usersByIpAddress.putIfAbsent(user.getIpAddress(), user) != null) {
+            usersByName.remove(key, user);
+            return false;
+        }
+
+        return true;
+    }
+
+    public User getUserByIpAddress(String ipAddress) {
+        return usersByIpAddress.get(ipAddress);
+    }
+
+    /**
+     * Returns the user with the given name (ignoring case) if it has at least one connected session.
+     */
+    public User getConnectedUser(String username) {
+        User user = usersByName.get(toKey(username));
+
+        if (user == null) {
+            return null;
+        }
+
+        return getSessions(user).isEmpty() ? null : user;
+    }
+
+    /**
+     * Returns a live view of the user's connected sessions.
+     */
+    public Collection<ClientHandler> getSessions(User user) {
+        Set<ClientHandler> sessions = sessionsByIpAddress.get(user.getIpAddress());
+
+        return sessions != null ? Collections.unmodifiableSet(sessions) : Collections.emptySet();
+    }
+
+    public boolean isUsernameInUse(String username) {
+        return usersByName.containsKey(toKey(username));
+    }
+
+    /**
+     * Changes the user's name if no other user has it yet. Reserving the new name is a single atomic map operation, so
+     * two users can't both get the same name.
+     */
+    public boolean rename(User user, String newUsername) {
+        String oldKey = toKey(user.getName());
+        String newKey = toKey(newUsername);
+
+        User owner = usersByName.putIfAbsent(newKey, user);
+
+        if (owner != null && owner != user) {
+            return false;
+        }
+
+        user.setName(newUsername);
+
+        if (!oldKey.equals(newKey)) {
+            usersByName.remove(oldKey, user);
+        }
+
+        invalidate();
+
+        return true;
+    }
+
+    public void addSession(ClientHandler clientHandler) {
+        sessions.put(clientHandler.getSessionId(), clientHandler);
+        sessionsByIpAddress.computeIfAbsent(clientHandler.getUser().getIpAddress(), ipAddress -> ConcurrentHashMap.newKeySet()).add(clientHandler);
+
+        invalidate();
+    }
+
+    /**
+     * Removes the session. Returns false if it had already been removed.
+     */
+    public boolean removeSession(ClientHandler clientHandler) {
+        if (sessions.remove(clientHandler.getSessionId(), clientHandler)) {
+            sessionsByIpAddress.get(clientHandler.getUser().getIpAddress()).remove(clientHandler);
+
+            invalidate();
+
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns a live view of all connected sessions in the order they connected.
+     */
+    public Collection<ClientHandler> getSessions() {
+        return sessions.values();
+    }
+
+    public int getNumberOfSessions() {
+        return sessions.size();
+    }
+
+    /**
+     * Returns the number of frames waiting in the outbound queues of all sessions. Only meant for metrics: it visits
+     * every session.
+     */
+    public long getOutboundQueueDepth() {
+        long depth = 0;
+
+        for (ClientHandler clientHandler : sessions.values()) {
+            depth += clientHandler.getOutboundQueue().getDepth();
+        }
+
+        return depth;
+    }
+
+    /**
+     * Returns the comma separated names of all connected sessions. The string is built once and reused until a session
+     * joins, leaves or gets renamed.
+     */
+    public String getUserNames() {
+        UserListSnapshot snapshot = userListSnapshot;
+        long currentVersion = version.get();
+
+        if (snapshot == null || snapshot.version != currentVersion) {
+            String userNames = sessions.values().stream()
+                    .filter(ClientHandler::isRunning)
+                    .map(clientHandler -> clientHandler.getUser().getName())
+                    .collect(Collectors.joining(", "));
+
+            snapshot = new UserListSnapshot(currentVersion, userNames);
+            userListSnapshot = snapshot;
+        }
+
+        return snapshot.userNames;
+    }
+
+    private void invalidate() {
+        version.incrementAndGet();
+    }
+
+    private static String toKey(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+
+    private static class UserListSnapshot {
+        private final long version;
+        private final String userNames;
+
+        private UserListSnapshot(long version, String userNames) {
+            this.version = version;
+            this.userNames = userNames;
+        }
+    }
+}
@@ -1,6 +1,23 @@
 package com.company;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A chat user. Every ip address belongs to exactly one user, so the ip address is its identity: names and colors may
+ * change, equality and the hash code don't.
+ */
 public class User {
+    /**
+     * The colors new users get, in turn.
+     */
+    public static final List<String> COLORS = Collections.unmodifiableList(
+            Arrays.asList("red", "#a38a00", "olive", "maroon", "lime", "green", "teal", "navy", "fuchsia", "purple")
+    );
+
+    private final long id;
     private String name;
     private String ipAddress;
     private String color;
@@ -9,6 +26,16 @@ public class User {
         this.name = name;
         this.ipAddress = ipAddress;
         this.color = color;
+
+        id = toId(ipAddress);
+    }
+
+    /**
+     * Returns a positive number derived from the ip address, so it is the same for every object of the same user:
+     * the connected one, users read back from the journal and users relayed by other cluster nodes.
+     */
+    public long getId() {
+        return id;
     }
 
     public String getName() {
@@ -27,13 +54,51 @@ public class User {
         return color;
     }
 
+    /**
+     * Returns the position of the color in {@link #COLORS} or {@link BinaryFrames#NO_COLOR} for any other color.
+     */
+    public int getColorIndex() {
+        int index = COLORS.indexOf(color);
+
+        return index >= 0 ? index : BinaryFrames.NO_COLOR;
+    }
+
     public void setColor(String color) {
         this.color = color;
     }
 
+    /**
+     * FNV-1a hash of the ip address. 0 is reserved for frames without an author.
+     */
+    private static long toId(String ipAddress) {
+        long hash = 0xcbf29ce484222325L;
+
+        for (byte b : ipAddress.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+
+        hash &= Long.MAX_VALUE;
+
+        return hash != 0 ? hash : 1;
+    }
+
     @Override
     public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (!(obj instanceof User)) {
+            return false;
+        }
+
         User user = (User) obj;
-        return user.getName().equals(name) && user.getIpAddress().equals(ipAddress);
+        return user.getIpAddress().equals(ipAddress);
+    }
+
+    @Override
+    public int hashCode() {
+        return ipAddress.hashCode();
     }
 }
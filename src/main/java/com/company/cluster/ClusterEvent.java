@@ -0,0 +1,111 @@
+package com.company.cluster;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Something that happened on one node and is relayed to all others. Every event carries the id of the node process it
+ * originated from and a sequence number per origin, which together identify it across the whole cluster.
+ * <p>
+ * Wire format: type (byte), origin, sequence (long), epoch milli (long), number of fields (byte), fields. Strings are
+ * written as their UTF-8 length (int) followed by the bytes.
+ */
+public class ClusterEvent {
+    private static final int MAX_STRING_LENGTH = 1024 * 1024;
+
+    public enum Type {
+        /** A chat message: room, author name, author ip address, author color, content, date. */
+        MESSAGE,
+        /** A server notice like a join, leave or rename: text. */
+        NOTICE,
+        /** The full list of users connected to a node: node id, comma separated names. */
+        PRESENCE
+    }
+
+    private final Type type;
+    private final String origin;
+    private final long sequence;
+    private final String[] fields;
+    private final long timeMillis;
+
+    public ClusterEvent(Type type, String origin, long sequence, long timeMillis, String... fields) {
+        this.type = type;
+        this.origin = origin;
+        this.sequence = sequence;
+        this.timeMillis = timeMillis;
+        this.fields = fields;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public String getField(int index) {
+        return fields[index];
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeByte(type.ordinal());
+        writeString(out, origin);
+        out.writeLong(sequence);
+        out.writeLong(timeMillis);
+        out.writeByte(fields.length);
+
+        for (String field : fields) {
+            writeString(out, field);
+        }
+    }
+
+    static ClusterEvent readFrom(DataInputStream in) throws IOException {
+        int typeIndex = in.readUnsignedByte();
+
+        if (typeIndex >= Type.values().length) {
+            throw new IOException("Unknown cluster event type " + typeIndex + ".");
+        }
+
+        String origin = readString(in);
+        long sequence = in.readLong();
+        long timeMillis = in.readLong();
+        String[] fields = new String[in.readUnsignedByte()];
+
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = readString(in);
+        }
+
+        return new ClusterEvent(Type.values()[typeIndex], origin, sequence, timeMillis, fields);
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+
+        if (length < 0 || length > MAX_STRING_LENGTH) {
+            throw new IOException("Invalid string length " + length + " in cluster event.");
+        }
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,262 @@
+package com.company.cluster;
+
+import com.company.ChatServer;
+import com.company.logging.ServerLog;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Relays chat messages, notices and the user lists between several chat server nodes that form one logical chat.
+ * <p>
+ * Every node listens for incoming links and keeps an outgoing {@link PeerLink} to each configured peer. Events are
+ * flooded: a node sends its own events to all peers and forwards every event it sees for the first time, so the peers
+ * don't have to form a full mesh. Duplicates are recognized by the origin (node id plus start time, so a restarted
+ * node starts a new sequence) and the sequence number.
+ * <p>
+ * The user list of every node is sent whenever it changes and periodically; a node that hasn't sent it for three
+ * periods is considered gone.
+ */
+public class ClusterNode {
+    static final int MAGIC = 0x43484154;
+
+    private static final long ACCEPT_RETRY_DELAY_MILLIS = 50;
+
+    private final ChatServer chatServer;
+    private final ServerLog log;
+    private final String nodeId;
+    private final String origin;
+    private final String host;
+    private final int port;
+    private final long presenceIntervalMillis;
+    private final List<PeerLink> peerLinks;
+    private final AtomicLong sequenceCounter;
+    private final ConcurrentMap<String, DeduplicationWindow> seenEvents;
+    private final ConcurrentMap<String, RemotePresence> remotePresences;
+
+    private volatile boolean isRunning;
+    private volatile ServerSocket serverSocket;
+
+    /**
+     * @param peers comma separated host:port addresses of other nodes, may be empty
+     */
+    public ClusterNode(ChatServer chatServer, String nodeId, String host, int port, String peers, int queueCapacity, long presenceIntervalMillis) {
+        this.chatServer = chatServer;
+        this.nodeId = nodeId;
+        this.host = host;
+        this.port = port;
+        this.presenceIntervalMillis = presenceIntervalMillis;
+
+        log = chatServer.getLog();
+        origin = nodeId + "@" + System.currentTimeMillis();
+        peerLinks = new ArrayList<>();
+        sequenceCounter = new AtomicLong();
+        seenEvents = new ConcurrentHashMap<>();
+        remotePresences = new ConcurrentHashMap<>();
+
+        for (String peer : peers.split(",")) {
+            peer = peer.trim();
+
+            if (!peer.isEmpty()) {
+                int separator = peer.lastIndexOf(':');
+                peerLinks.add(new PeerLink(peer.substring(0, separator), Integer.parseInt(peer.substring(separator + 1)), queueCapacity, log));
+            }
+        }
+    }
+
+    /**
+     * Starts listening for other nodes (unless the port is 0), connects to the peers and starts sending the user list.
+     */
+    public void start(ScheduledExecutorService scheduler) throws IOException {
+        isRunning = true;
+
+        if (port > 0) {
+            serverSocket = new ServerSocket();
+            serverSocket.bind(new InetSocketAddress(host, port));
+
+            Thread acceptThread = new Thread(this::acceptLinks, "cluster-accept");
+            acceptThread.setDaemon(true);
+            acceptThread.start();
+
+            log.info("Cluster node '" + nodeId + "' listens at " + host + ":" + serverSocket.getLocalPort() + ".");
+        }
+
+        for (PeerLink peerLink : peerLinks) {
+            peerLink.start();
+        }
+
+        scheduler.scheduleWithFixedDelay(this::publishPresence, 0, presenceIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void close() {
+        isRunning = false;
+
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                log.error("Couldn't close the cluster server socket.", e);
+            }
+        }
+
+        for (PeerLink peerLink : peerLinks) {
+            peerLink.close();
+        }
+    }
+
+    public void publishMessage(String roomName, String authorName, String authorIpAddress, String authorColor, String content, long timeMillis) {
+        publish(ClusterEvent.Type.MESSAGE, timeMillis, roomName == null ? "" : roomName, authorName, authorIpAddress, authorColor, content);
+    }
+
+    public void publishNotice(String notice) {
+        publish(ClusterEvent.Type.NOTICE, System.currentTimeMillis(), notice);
+    }
+
+    /**
+     * Sends the names of this node's connected users to all nodes.
+     */
+    public void publishPresence() {
+        publish(ClusterEvent.Type.PRESENCE, System.currentTimeMillis(), nodeId, chatServer.getSessionRegistry().getUserNames());
+    }
+
+    /**
+     * Returns the comma separated names of the users connected to other nodes that are still alive, sorted by node.
+     */
+    public String getRemoteUserNames() {
+        long oldestAlive = System.currentTimeMillis() - 3 * presenceIntervalMillis;
+        StringJoiner userNames = new StringJoiner(", ");
+
+        for (Map.Entry<String, RemotePresence> entry : new TreeMap<>(remotePresences).entrySet()) {
+            RemotePresence presence = entry.getValue();
+
+            if (presence.receivedMillis >= oldestAlive && !presence.userNames.isEmpty()) {
+                userNames.add(presence.userNames);
+            }
+        }
+
+        return userNames.toString();
+    }
+
+    private void publish(ClusterEvent.Type type, long timeMillis, String... fields) {
+        if (peerLinks.isEmpty()) {
+            return;
+        }
+
+        ClusterEvent event = new ClusterEvent(type, origin, sequenceCounter.getAndIncrement(), timeMillis, fields);
+
+        for (PeerLink peerLink : peerLinks) {
+            peerLink.send(event);
+        }
+    }
+
+    /**
+     * Accepts links from other nodes until the node is closed. A failing accept (e.g. out of file descriptors) is
+     * logged and retried after a short pause instead of spinning.
+     */
+    private void acceptLinks() {
+        while (isRunning) {
+            try {
+                Socket socket = serverSocket.accept();
+
+                Thread readThread = new Thread(() -> readLink(socket), "cluster-read-" + socket.getRemoteSocketAddress());
+                readThread.setDaemon(true);
+                readThread.start();
+            } catch (IOException e) {
+                if (!isRunning) {
+                    return;
+                }
+
+                log.error("Couldn't accept a cluster link.", e);
+
+                try {
+                    Thread.sleep(ACCEPT_RETRY_DELAY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void readLink(Socket socket) {
+        try (socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+
+            if (in.readInt() != MAGIC) {
+                log.info("Rejected a cluster link from " + socket.getRemoteSocketAddress() + ": not a chat server node.");
+                return;
+            }
+
+            while (isRunning) {
+                handle(ClusterEvent.readFrom(in));
+            }
+        } catch (EOFException e) {
+            // the peer closed the link
+        } catch (IOException e) {
+            log.info("Cluster link from " + socket.getRemoteSocketAddress() + " failed: " + e);
+        }
+    }
+
+    /**
+     * Applies an event received from another node and forwards it, unless it has been seen before.
+     */
+    private void handle(ClusterEvent event) {
+        if (event.getOrigin().equals(origin)) {
+            return;
+        }
+
+        if (!seenEvents.computeIfAbsent(event.getOrigin(), key -> new DeduplicationWindow()).markSeen(event.getSequence())) {
+            return;
+        }
+
+        for (PeerLink peerLink : peerLinks) {
+            peerLink.send(event);
+        }
+
+        switch (event.getType()) {
+            case MESSAGE:
+                String roomName = event.getField(0);
+                chatServer.deliverRemoteMessage(roomName.isEmpty() ? null : roomName, event.getOrigin(), event.getField(1), event.getField(2), event.getField(3), event.getField(4), event.getTimeMillis());
+                break;
+            case NOTICE:
+                chatServer.deliverRemoteNotice(event.getField(0));
+                break;
+            case PRESENCE:
+                RemotePresence presence = new RemotePresence(event.getOrigin(), event.getSequence(), event.getField(1), System.currentTimeMillis());
+
+                // a newer list of the same node process may have overtaken this one on another path
+                remotePresences.merge(event.getField(0), presence, (current, received) ->
+                        current.origin.equals(received.origin) && current.sequence > received.sequence ? current : received);
+                break;
+        }
+    }
+
+    private static class RemotePresence {
+        private final String origin;
+        private final long sequence;
+        private final String userNames;
+        private final long receivedMillis;
+
+        private RemotePresence(String origin, long sequence, String userNames, long receivedMillis) {
+            this.origin = origin;
+            this.sequence = sequence;
+            this.userNames = userNames;
+            this.receivedMillis = receivedMillis;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.company.cluster;
+
+/**
+ * Remembers which sequence numbers of one origin have been seen. Events are flooded over all links, so the same event
+ * arrives more than once and not necessarily in order; the window tracks the highest sequence and a bitmap of the
+ * {@value #SIZE} sequences below it. Anything older than that is treated as already seen.
+ */
+class DeduplicationWindow {
+    private static final int SIZE = 4096;
+
+    private final long[] bits;
+
+    private long highestSequence;
+
+    DeduplicationWindow() {
+        bits = new long[SIZE / 64];
+        highestSequence = -1;
+    }
+
+    /**
+     * Marks the sequence as seen. Returns false if it had been seen before.
+     */
+    synchronized boolean markSeen(long sequence) {
+        if (sequence > highestSequence) {
+            for (long cleared = Math.max(highestSequence + 1, sequence - SIZE + 1); cleared <= sequence; cleared++) {
+                clear(cleared);
+            }
+
+            highestSequence = sequence;
+            set(sequence);
+
+            return true;
+        }
+
+        if (sequence <= highestSequence - SIZE || isSet(sequence)) {
+            return false;
+        }
+
+        set(sequence);
+
+        return true;
+    }
+
+    private boolean isSet(long sequence) {
+        int index = (int) (sequence & (SIZE - 1));
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    private void set(long sequence) {
+        int index = (int) (sequence & (SIZE - 1));
+        bits[index >>> 6] |= 1L << index;
+    }
+
+    private void clear(long sequence) {
+        int index = (int) (sequence & (SIZE - 1));
+        bits[index >>> 6] &= ~(1L << index);
+    }
+}
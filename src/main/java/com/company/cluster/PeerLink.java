@@ -0,0 +1,104 @@
+package com.company.cluster;
+
+import com.company.logging.ServerLog;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistent outgoing connection to another node. Events are queued and a dedicated thread writes everything that is
+ * pending with a single flush. If the connection breaks, the thread reconnects and writes the interrupted batch
+ * again; the receiver drops what it has already seen. While the peer is unreachable the oldest events are dropped once
+ * the queue is full.
+ */
+class PeerLink {
+    private static final int MAX_BATCH_SIZE = 512;
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+
+    private final String host;
+    private final int port;
+    private final ServerLog log;
+    private final BlockingQueue<ClusterEvent> pendingEvents;
+    private final Thread writerThread;
+
+    private volatile boolean isRunning;
+
+    PeerLink(String host, int port, int capacity, ServerLog log) {
+        this.host = host;
+        this.port = port;
+        this.log = log;
+
+        pendingEvents = new ArrayBlockingQueue<>(capacity);
+        writerThread = new Thread(this::run, "cluster-link-" + host + ":" + port);
+        writerThread.setDaemon(true);
+    }
+
+    void start() {
+        isRunning = true;
+        writerThread.start();
+    }
+
+    void close() {
+        isRunning = false;
+        writerThread.interrupt();
+    }
+
+    void send(ClusterEvent event) {
+        while (!pendingEvents.offer(event)) {
+            pendingEvents.poll();
+        }
+    }
+
+    private void run() {
+        List<ClusterEvent> batch = new ArrayList<>();
+        boolean wasConnected = true;
+
+        while (isRunning) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(host, port), (int) TimeUnit.SECONDS.toMillis(5));
+                socket.setTcpNoDelay(true);
+
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+                out.writeInt(ClusterNode.MAGIC);
+
+                log.info("Connected to the cluster node " + host + ":" + port + ".");
+                wasConnected = true;
+
+                while (isRunning) {
+                    if (batch.isEmpty()) {
+                        batch.add(pendingEvents.take());
+                        pendingEvents.drainTo(batch, MAX_BATCH_SIZE - 1);
+                    }
+
+                    for (ClusterEvent event : batch) {
+                        event.writeTo(out);
+                    }
+
+                    out.flush();
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                if (wasConnected) {
+                    log.info("Lost the connection to the cluster node " + host + ":" + port + ", retrying: " + e);
+                    wasConnected = false;
+                }
+            }
+
+            try {
+                Thread.sleep(RECONNECT_DELAY_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,493 @@
+package com.company.history;
+
+import com.company.Message;
+import com.company.User;
+import com.company.logging.ServerLog;
+import com.company.metrics.ServerMetrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of all chat messages, split into segment files named after the sequence number of their first
+ * message. It is written behind the {@link MessageLog}: posting a message never waits for the journal. A single writer
+ * thread follows the log's published messages with its own cursor, encodes everything it hasn't written yet into one
+ * buffer, writes it with one {@link FileChannel#write} call and then syncs once for the whole batch (group commit).
+ * <p>
+ * Record layout: length (int), CRC32C of the body (int), body. The body holds the sequence number, the epoch milli
+ * of the date, author (name, ip address, color), content and the recipients. A record that was torn by a crash fails
+ * the length or checksum test and is cut off when the journal is opened again.
+ * <p>
+ * Since the journal only writes behind, a message is not durable yet when it has been delivered. If the disk stalls
+ * for so long that the log wraps around before the writer thread gets to a message, that message is not journaled
+ * (it has still been delivered); such dropped messages are counted and reported in the log.
+ */
+public class MessageJournal {
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+    private static final int MAX_BATCH_SIZE = 1024;
+    private static final ZoneId ZONE = ZoneId.of("Europe/Paris");
+
+    private final Path directory;
+    private final long segmentSize;
+    private final int maxSegments;
+    private final boolean sync;
+    private final ServerMetrics metrics;
+    private final ServerLog log;
+    private final Thread writerThread;
+
+    private FileChannel channel;
+    private ByteBuffer writeBuffer;
+    private MessageLog messageLog;
+    private long cursor;
+    private volatile boolean isRunning;
+    private volatile boolean isWaiting;
+
+    /**
+     * Opens the journal in the given directory. The newest segment is checked for a torn last record and continued.
+     */
+    public MessageJournal(Path directory, long segmentSize, int maxSegments, boolean sync, ServerMetrics metrics, ServerLog log) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = Math.max(1, maxSegments);
+        this.sync = sync;
+        this.metrics = metrics;
+        this.log = log;
+
+        Files.createDirectories(directory);
+
+        writeBuffer = ByteBuffer.allocateDirect(64 * 1024);
+
+        List<Path> segments = listSegments();
+
+        if (!segments.isEmpty()) {
+            Path newestSegment = segments.get(segments.size() - 1);
+
+            channel = FileChannel.open(newestSegment, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+            long validSize = findValidSize(channel);
+
+            if (validSize < channel.size()) {
+                log.info("Cut off a torn record at the end of the journal segment '" + newestSegment + "'.");
+                channel.truncate(validSize);
+            }
+
+            channel.position(validSize);
+        }
+
+        writerThread = new Thread(this::writeMessages, "chat-server-journal");
+        writerThread.setDaemon(true);
+    }
+
+    /**
+     * Starts the writer thread, which journals every message the log publishes from now on. Messages that are already
+     * in the log (e.g. the restored ones) are not written again.
+     */
+    public void start(MessageLog messageLog) {
+        this.messageLog = messageLog;
+        cursor = messageLog.getNextSequence();
+
+        isRunning = true;
+        writerThread.start();
+    }
+
+    /**
+     * Called by the log after it published a message. Lock-free: it only wakes the writer thread if it is waiting.
+     */
+    void wakeUp() {
+        if (isWaiting) {
+            LockSupport.unpark(writerThread);
+        }
+    }
+
+    /**
+     * Writes everything that is still pending, syncs and closes the current segment.
+     */
+    public void close() {
+        isRunning = false;
+
+        // unparked, not interrupted: an interrupt during a write would close the channel
+        LockSupport.unpark(writerThread);
+
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads the latest messages (at most count) in sequence order. Segments are memory mapped and read from the newest
+     * to the oldest until enough messages are found, so only the tail of the journal is touched.
+     */
+    public List<Message> readLatest(int count) throws IOException {
+        List<Path> segments = listSegments();
+        Deque<Message> messages = new ArrayDeque<>();
+        Map<String, User> users = new HashMap<>();
+
+        for (int i = segments.size() - 1; i >= 0 && messages.size() < count; i--) {
+            try (FileChannel segmentChannel = FileChannel.open(segments.get(i), StandardOpenOption.READ)) {
+                long size = segmentChannel.size();
+
+                if (size == 0) {
+                    continue;
+                }
+
+                MappedByteBuffer buffer = segmentChannel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                int[] recordPositions = new int[16];
+                int numberOfRecords = 0;
+
+                while (isValidRecord(buffer)) {
+                    if (numberOfRecords == recordPositions.length) {
+                        recordPositions = Arrays.copyOf(recordPositions, numberOfRecords * 2);
+                    }
+
+                    recordPositions[numberOfRecords++] = buffer.position();
+                    buffer.position(buffer.position() + HEADER_SIZE + buffer.getInt(buffer.position()));
+                }
+
+                for (int j = numberOfRecords - 1; j >= 0 && messages.size() < count; j--) {
+                    buffer.position(recordPositions[j] + HEADER_SIZE);
+                    messages.addFirst(decode(buffer, users));
+                }
+            }
+        }
+
+        return new ArrayList<>(messages);
+    }
+
+    /**
+     * Reads the messages with a sequence number from first (inclusive) to end (exclusive). The segment file names
+     * tell which segment holds the first one; the messages are decoded from there on until end is reached.
+     */
+    public List<Message> readRange(long first, long end) throws IOException {
+        List<Path> segments = listSegments();
+        List<Message> messages = new ArrayList<>();
+        Map<String, User> users = new HashMap<>();
+        int segment = 0;
+
+        while (segment + 1 < segments.size() && getFirstSequence(segments.get(segment + 1)) <= first) {
+            segment++;
+        }
+
+        for (; segment < segments.size(); segment++) {
+            try (FileChannel segmentChannel = FileChannel.open(segments.get(segment), StandardOpenOption.READ)) {
+                long size = segmentChannel.size();
+
+                if (size == 0) {
+                    continue;
+                }
+
+                MappedByteBuffer buffer = segmentChannel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+                while (isValidRecord(buffer)) {
+                    int recordStart = buffer.position();
+                    long sequence = buffer.getLong(recordStart + HEADER_SIZE);
+
+                    if (sequence >= end) {
+                        return messages;
+                    }
+
+                    if (sequence >= first) {
+                        buffer.position(recordStart + HEADER_SIZE);
+                        messages.add(decode(buffer, users));
+                    }
+
+                    buffer.position(recordStart + HEADER_SIZE + buffer.getInt(recordStart));
+                }
+            }
+        }
+
+        return messages;
+    }
+
+    private static long getFirstSequence(Path segment) {
+        String fileName = segment.getFileName().toString();
+
+        return Long.parseLong(fileName.substring(0, fileName.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private void writeMessages() {
+        List<Message> batch = new ArrayList<>();
+
+        while (true) {
+            boolean wasRunning = isRunning;
+
+            if (cursor == messageLog.getNextSequence()) {
+                if (!wasRunning) {
+                    break;
+                }
+
+                isWaiting = true;
+
+                // checked again after announcing the wait, so a message published in between isn't slept through
+                if (cursor == messageLog.getNextSequence() && isRunning) {
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+                }
+
+                isWaiting = false;
+                continue;
+            }
+
+            long dropped = collectBatch(batch);
+
+            if (!batch.isEmpty()) {
+                try {
+                    writeBatch(batch);
+                } catch (IOException e) {
+                    log.error("Couldn't write " + batch.size() + " messages to the journal.", e);
+                }
+
+                batch.clear();
+            }
+
+            if (dropped > 0) {
+                metrics.getJournalMessagesDropped().add(dropped);
+                log.info("The journal couldn't keep up: dropped " + dropped + " messages.");
+            }
+        }
+
+        try {
+            if (channel != null) {
+                channel.force(false);
+                channel.close();
+            }
+        } catch (IOException e) {
+            log.error("Couldn't close the journal.", e);
+        }
+    }
+
+    /**
+     * Takes the next published messages (at most a batch) from the log and advances the cursor past them. Returns the
+     * number of messages that were overwritten in the log before they could be journaled.
+     */
+    private long collectBatch(List<Message> batch) {
+        long oldestSequence = messageLog.getOldestSequence();
+        long dropped = 0;
+
+        if (cursor < oldestSequence) {
+            dropped = oldestSequence - cursor;
+            cursor = oldestSequence;
+        }
+
+        long end = Math.min(messageLog.getNextSequence(), cursor + MAX_BATCH_SIZE);
+
+        for (; cursor < end; cursor++) {
+            Message message = messageLog.get(cursor);
+
+            if (message != null) {
+                batch.add(message);
+            } else {
+                dropped++;
+            }
+        }
+
+        return dropped;
+    }
+
+    private void writeBatch(List<Message> batch) throws IOException {
+        if (channel == null || channel.position() >= segmentSize) {
+            rollSegment(batch.get(0).getSequence());
+        }
+
+        writeBuffer.clear();
+
+        for (Message message : batch) {
+            encode(message);
+        }
+
+        writeBuffer.flip();
+
+        while (writeBuffer.hasRemaining()) {
+            channel.write(writeBuffer);
+        }
+
+        if (sync) {
+            channel.force(false);
+        }
+    }
+
+    private void rollSegment(long firstSequence) throws IOException {
+        if (channel != null) {
+            channel.force(false);
+            channel.close();
+        }
+
+        Path segment = directory.resolve(String.format("%020d", firstSequence) + SEGMENT_SUFFIX);
+        channel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        channel.position(channel.size());
+
+        List<Path> segments = listSegments();
+
+        for (int i = 0; i < segments.size() - maxSegments; i++) {
+            Files.deleteIfExists(segments.get(i));
+        }
+    }
+
+    private void encode(Message message) {
+        User author = message.getUser();
+        byte[][] strings = new byte[4 + message.getRecipients().size() * 3][];
+        int index = 0;
+
+        strings[index++] = toBytes(author.getName());
+        strings[index++] = toBytes(author.getIpAddress());
+        strings[index++] = toBytes(author.getColor());
+        strings[index++] = toBytes(message.getContent());
+
+        for (User recipient : message.getRecipients()) {
+            strings[index++] = toBytes(recipient.getName());
+            strings[index++] = toBytes(recipient.getIpAddress());
+            strings[index++] = toBytes(recipient.getColor());
+        }
+
+        int bodySize = 8 + 8 + 4;
+
+        for (byte[] string : strings) {
+            bodySize += 4 + string.length;
+        }
+
+        ensureCapacity(HEADER_SIZE + bodySize);
+
+        int recordStart = writeBuffer.position();
+
+        writeBuffer.putInt(bodySize);
+        writeBuffer.putInt(0);
+        writeBuffer.putLong(message.getSequence());
+        writeBuffer.putLong(message.getDate().toInstant().toEpochMilli());
+
+        for (int i = 0; i < 4; i++) {
+            putString(strings[i]);
+        }
+
+        writeBuffer.putInt(message.getRecipients().size());
+
+        for (int i = 4; i < strings.length; i++) {
+            putString(strings[i]);
+        }
+
+        CRC32C crc = new CRC32C();
+        crc.update(writeBuffer.duplicate().position(recordStart + HEADER_SIZE).limit(writeBuffer.position()));
+        writeBuffer.putInt(recordStart + 4, (int) crc.getValue());
+    }
+
+    private void ensureCapacity(int recordSize) {
+        if (writeBuffer.remaining() < recordSize) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(writeBuffer.capacity() * 2, writeBuffer.position() + recordSize));
+            writeBuffer.flip();
+            buffer.put(writeBuffer);
+            writeBuffer = buffer;
+        }
+    }
+
+    private void putString(byte[] string) {
+        writeBuffer.putInt(string.length);
+        writeBuffer.put(string);
+    }
+
+    private static byte[] toBytes(String string) {
+        return string.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Message decode(ByteBuffer buffer, Map<String, User> users) {
+        long sequence = buffer.getLong();
+        ZonedDateTime date = Instant.ofEpochMilli(buffer.getLong()).atZone(ZONE);
+        User author = getUser(buffer, users);
+        String content = getString(buffer);
+
+        Message message = new Message(author, content, date);
+        message.setSequence(sequence);
+
+        int numberOfRecipients = buffer.getInt();
+
+        for (int i = 0; i < numberOfRecipients; i++) {
+            message.addRecipient(getUser(buffer, users));
+        }
+
+        return message;
+    }
+
+    /**
+     * Returns one shared user instance for every distinct name, ip address and color.
+     */
+    private static User getUser(ByteBuffer buffer, Map<String, User> users) {
+        String name = getString(buffer);
+        String ipAddress = getString(buffer);
+        String color = getString(buffer);
+
+        return users.computeIfAbsent(name + '\n' + ipAddress + '\n' + color, key -> new User(name, ipAddress, color));
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns true if a complete record with a matching checksum starts at the buffer's position.
+     */
+    private static boolean isValidRecord(ByteBuffer buffer) {
+        int position = buffer.position();
+
+        if (buffer.limit() - position < HEADER_SIZE) {
+            return false;
+        }
+
+        int bodySize = buffer.getInt(position);
+
+        if (bodySize <= 0 || bodySize > MAX_RECORD_SIZE || buffer.limit() - position - HEADER_SIZE < bodySize) {
+            return false;
+        }
+
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.duplicate().position(position + HEADER_SIZE).limit(position + HEADER_SIZE + bodySize));
+
+        return (int) crc.getValue() == buffer.getInt(position + 4);
+    }
+
+    private static long findValidSize(FileChannel channel) throws IOException {
+        long size = channel.size();
+
+        if (size == 0) {
+            return 0;
+        }
+
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+        while (isValidRecord(buffer)) {
+            buffer.position(buffer.position() + HEADER_SIZE + buffer.getInt(buffer.position()));
+        }
+
+        return buffer.position();
+    }
+
+    private List<Path> listSegments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path segment : stream) {
+                segments.add(segment);
+            }
+        }
+
+        segments.sort(Comparator.comparing(segment -> segment.getFileName().toString()));
+
+        return segments;
+    }
+}
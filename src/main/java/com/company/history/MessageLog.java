@@ -0,0 +1,165 @@
+package com.company.history;
+
+import com.company.Message;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed capacity ring buffer holding the latest chat messages. Every message gets a sequence number; readers keep their
+ * own cursor (the next sequence they want to read) and never block writers. Once a reader falls more than the capacity
+ * behind, the overwritten messages are simply gone for it, which it can detect through {@link #getOldestSequence()}.
+ * <p>
+ * Writers don't wait for each other either. A writer claims a sequence number, stores its message in the slot and then
+ * advances the published sequence over every consecutive slot that holds its message, so whichever writer finishes
+ * last publishes the others' messages as well. A slot whose writer hasn't stored its message yet stops the published
+ * sequence until that writer is done.
+ */
+public class MessageLog {
+    private final AtomicReferenceArray<Message> entries;
+    private final int mask;
+    private final AtomicLong claimedSequence;
+    private final AtomicLong publishedSequence;
+    private final MessageJournal journal;
+
+    private volatile long firstSequence;
+
+    public MessageLog(int capacity) {
+        this(capacity, null);
+    }
+
+    /**
+     * Creates a log that additionally wakes the journal (which may be null) whenever it published a message, so the
+     * journal can write it behind.
+     */
+    public MessageLog(int capacity, MessageJournal journal) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity must be positive.");
+        }
+
+        int size = Integer.highestOneBit(capacity);
+
+        if (size < capacity) {
+            size <<= 1;
+        }
+
+        entries = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+        claimedSequence = new AtomicLong();
+        publishedSequence = new AtomicLong();
+        this.journal = journal;
+    }
+
+    /**
+     * Fills the empty log with messages read back from the journal and continues their numbering. The messages must
+     * be in sequence order; only the newest consecutive run is kept. Must be called before the first append.
+     */
+    public void restore(List<Message> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+
+        if (claimedSequence.get() != 0) {
+            throw new IllegalStateException("Messages can only be restored into an empty log.");
+        }
+
+        int first = messages.size() - 1;
+
+        while (first > 0 && messages.get(first - 1).getSequence() == messages.get(first).getSequence() - 1) {
+            first--;
+        }
+
+        for (int i = first; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            entries.set((int) (message.getSequence() & mask), message);
+        }
+
+        long next = messages.get(messages.size() - 1).getSequence() + 1;
+
+        firstSequence = messages.get(first).getSequence();
+        claimedSequence.set(next);
+        publishedSequence.set(next);
+    }
+
+    /**
+     * Stores the message and assigns its sequence number. Concurrent appends claim consecutive sequence numbers and
+     * are published in that order, so {@link #getNextSequence()} never skips an unwritten slot. Never waits for other
+     * writers.
+     */
+    public long append(Message message) {
+        long sequence = claimedSequence.getAndIncrement();
+        int index = (int) (sequence & mask);
+
+        message.setSequence(sequence);
+
+        Message previous = entries.get(index);
+
+        // a writer that stalled for a whole turn of the ring must not overwrite the newer message in its slot
+        while ((previous == null || previous.getSequence() < sequence) && !entries.compareAndSet(index, previous, message)) {
+            previous = entries.get(index);
+        }
+
+        publish();
+
+        if (journal != null) {
+            journal.wakeUp();
+        }
+
+        return sequence;
+    }
+
+    /**
+     * Advances the published sequence over all slots that have been written. A slot holding a newer message counts as
+     * written: its own message has been overwritten already.
+     */
+    private void publish() {
+        long next = publishedSequence.get();
+
+        while (true) {
+            Message message = entries.get((int) (next & mask));
+
+            if (message == null || message.getSequence() < next) {
+                return;
+            }
+
+            if (publishedSequence.compareAndSet(next, next + 1)) {
+                next++;
+            } else {
+                next = publishedSequence.get();
+            }
+        }
+    }
+
+    /**
+     * Returns the message with the given sequence number or null if it has not been published yet or has already
+     * been overwritten.
+     */
+    public Message get(long sequence) {
+        if (sequence < 0 || sequence >= publishedSequence.get()) {
+            return null;
+        }
+
+        Message message = entries.get((int) (sequence & mask));
+
+        return message != null && message.getSequence() == sequence ? message : null;
+    }
+
+    /**
+     * Returns the sequence number the next message will get, which equals the number of messages published so far.
+     */
+    public long getNextSequence() {
+        return publishedSequence.get();
+    }
+
+    /**
+     * Returns the sequence number of the oldest message that is still held by the log.
+     */
+    public long getOldestSequence() {
+        return Math.max(firstSequence, publishedSequence.get() - entries.length());
+    }
+
+    public int getCapacity() {
+        return entries.length();
+    }
+}
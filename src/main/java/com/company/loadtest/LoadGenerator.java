@@ -0,0 +1,211 @@
+package com.company.loadtest;
+
+import com.company.ServerConfig;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load driver for a running chat server. It connects the configured number of simulated clients, each from its own
+ * loopback address (127.0.x.y), and then issues a weighted mix of chat lines, mentions, commands and reconnects at a
+ * fixed total rate. No client sends more often than the server's session rate limit allows.
+ * <p>
+ * Options (all optional):
+ * <pre>
+ *   --host=127.0.0.1 --port=5555        server to test
+ *   --clients=100                       number of simulated clients
+ *   --connect.rate=0                    new connections per second during the login phase, 0 for as fast as possible
+ *   --rate=100                          operations per second after the login phase
+ *   --duration=30                       seconds to run after the login phase
+ *   --min.interval.ms=210               minimum time between two lines of the same client
+ *   --mix=chat:80,mention:10,userlist:5,setname:3,reconnect:2
+ *   --report.interval=5                 seconds between interval reports
+ * </pre>
+ * The delivery latency is measured from sending a chat line until each client receives its broadcast.
+ */
+public class LoadGenerator {
+    private static final String[] OPERATIONS = {"chat", "mention", "userlist", "setname", "reconnect"};
+
+    private final ServerConfig config;
+    private final LoadStatistics statistics;
+    private final List<SimulatedClient> clients;
+    private final int[] operationWeights;
+    private int totalWeight;
+    private int nextClient = 0;
+
+    public LoadGenerator(ServerConfig config) {
+        this.config = config;
+
+        statistics = new LoadStatistics();
+        clients = new ArrayList<>();
+        operationWeights = parseMix(config.getString("mix", "chat:80,mention:10,userlist:5,setname:3,reconnect:2"));
+    }
+
+    public static void main(String[] args) throws IOException {
+        new LoadGenerator(ServerConfig.fromArgs(args)).run();
+    }
+
+    public void run() throws IOException {
+        InetSocketAddress serverAddress = new InetSocketAddress(config.getString("host", "127.0.0.1"), config.getInt("port", 5555));
+        int numberOfClients = config.getInt("clients", 100);
+        int connectRate = config.getInt("connect.rate", 0);
+        int rate = config.getInt("rate", 100);
+        long durationNanos = TimeUnit.SECONDS.toNanos(config.getInt("duration", 30));
+        long minimumIntervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getInt("min.interval.ms", 210));
+        long reportIntervalNanos = TimeUnit.SECONDS.toNanos(config.getInt("report.interval", 5));
+
+        System.out.println("Connecting " + numberOfClients + " clients to " + serverAddress + "...");
+
+        long connectStart = System.nanoTime();
+
+        for (int i = 0; i < numberOfClients; i++) {
+            if (connectRate > 0) {
+                parkUntil(connectStart + i * TimeUnit.SECONDS.toNanos(1) / connectRate);
+            }
+
+            SimulatedClient client = new SimulatedClient(i, getLocalAddress(i), serverAddress, statistics);
+            client.connect();
+            clients.add(client);
+        }
+
+        System.out.printf("Connected %d clients in %.1f s, running %d operations per second for %d s%n",
+                numberOfClients, (System.nanoTime() - connectStart) / 1e9, rate, TimeUnit.NANOSECONDS.toSeconds(durationNanos));
+
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long end = start + durationNanos;
+        long nextReport = start + reportIntervalNanos;
+        long nextOperation = start;
+
+        while (nextOperation < end) {
+            parkUntil(nextOperation);
+
+            long now = System.nanoTime();
+            SimulatedClient client = nextSendingClient(now, minimumIntervalNanos);
+
+            if (client == null) {
+                statistics.throttled.increment();
+            } else {
+                try {
+                    execute(client, now);
+                } catch (IOException e) {
+                    statistics.errors.increment();
+                }
+            }
+
+            if (now >= nextReport) {
+                statistics.printInterval(System.out, TimeUnit.NANOSECONDS.toSeconds(now - start));
+                nextReport += reportIntervalNanos;
+            }
+
+            nextOperation += intervalNanos;
+        }
+
+        // give the last broadcasts time to arrive
+        LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(1));
+
+        statistics.printInterval(System.out, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start));
+        statistics.printSummary(System.out, (System.nanoTime() - start) / 1e9);
+
+        for (SimulatedClient client : clients) {
+            client.close();
+        }
+    }
+
+    private void execute(SimulatedClient client, long now) throws IOException {
+        switch (pickOperation()) {
+            case "chat":
+                client.sendChat(now);
+                break;
+            case "mention":
+                SimulatedClient recipient = clients.get(ThreadLocalRandom.current().nextInt(clients.size()));
+                client.sendMention(recipient.getName() == null ? "nobody" : recipient.getName(), now);
+                break;
+            case "userlist":
+                client.sendUserList(now);
+                break;
+            case "setname":
+                client.sendSetName(now);
+                break;
+            default:
+                client.reconnect();
+                break;
+        }
+    }
+
+    /**
+     * Returns the next client in round-robin order that is allowed to send, or null if none is.
+     */
+    private SimulatedClient nextSendingClient(long now, long minimumIntervalNanos) {
+        for (int i = 0; i < clients.size(); i++) {
+            SimulatedClient client = clients.get(nextClient);
+            nextClient = (nextClient + 1) % clients.size();
+
+            if (client.canSend(now, minimumIntervalNanos)) {
+                return client;
+            }
+        }
+
+        return null;
+    }
+
+    private String pickOperation() {
+        int value = ThreadLocalRandom.current().nextInt(totalWeight);
+
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            value -= operationWeights[i];
+
+            if (value < 0) {
+                return OPERATIONS[i];
+            }
+        }
+
+        return OPERATIONS[0];
+    }
+
+    private int[] parseMix(String mix) {
+        int[] weights = new int[OPERATIONS.length];
+
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split(":");
+            int index = -1;
+
+            for (int i = 0; i < OPERATIONS.length; i++) {
+                if (OPERATIONS[i].equals(parts[0])) {
+                    index = i;
+                }
+            }
+
+            if (index < 0 || parts.length != 2) {
+                throw new IllegalArgumentException("Invalid mix entry '" + entry + "'. Format: operation:weight");
+            }
+
+            weights[index] = Integer.parseInt(parts[1]);
+            totalWeight += weights[index];
+        }
+
+        if (totalWeight <= 0) {
+            throw new IllegalArgumentException("The mix needs at least one operation with a positive weight.");
+        }
+
+        return weights;
+    }
+
+    private static InetAddress getLocalAddress(int clientIndex) throws IOException {
+        return InetAddress.getByAddress(new byte[]{127, 0, (byte) (clientIndex / 250 + 1), (byte) (clientIndex % 250 + 1)});
+    }
+
+    private static void parkUntil(long deadlineNanos) {
+        long remaining;
+
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.company.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency recorders shared by all simulated clients. Latencies are recorded in nanoseconds and reported
+ * in microseconds.
+ */
+class LoadStatistics {
+    private static final long HIGHEST_TRACKABLE_LATENCY = TimeUnit.MINUTES.toNanos(1);
+
+    final Recorder deliveryLatency = new Recorder(HIGHEST_TRACKABLE_LATENCY, 3);
+    final Recorder commandLatency = new Recorder(HIGHEST_TRACKABLE_LATENCY, 3);
+    final Recorder connectLatency = new Recorder(HIGHEST_TRACKABLE_LATENCY, 3);
+    final Recorder reconnectLatency = new Recorder(HIGHEST_TRACKABLE_LATENCY, 3);
+
+    final LongAdder chatMessagesSent = new LongAdder();
+    final LongAdder ownMessagesReceived = new LongAdder();
+    final LongAdder deliveries = new LongAdder();
+    final LongAdder reconnects = new LongAdder();
+    final LongAdder disconnects = new LongAdder();
+    final LongAdder throttled = new LongAdder();
+    final LongAdder errors = new LongAdder();
+
+    private final Histogram totalDeliveryLatency = new Histogram(HIGHEST_TRACKABLE_LATENCY, 3);
+    private final Histogram totalCommandLatency = new Histogram(HIGHEST_TRACKABLE_LATENCY, 3);
+    private final Histogram totalConnectLatency = new Histogram(HIGHEST_TRACKABLE_LATENCY, 3);
+    private final Histogram totalReconnectLatency = new Histogram(HIGHEST_TRACKABLE_LATENCY, 3);
+
+    /**
+     * Prints the delivery latency since the last interval report and adds all interval histograms to the totals.
+     */
+    void printInterval(PrintStream out, long elapsedSeconds) {
+        Histogram delivery = deliveryLatency.getIntervalHistogram();
+
+        totalDeliveryLatency.add(delivery);
+        totalCommandLatency.add(commandLatency.getIntervalHistogram());
+        totalConnectLatency.add(connectLatency.getIntervalHistogram());
+        totalReconnectLatency.add(reconnectLatency.getIntervalHistogram());
+
+        out.printf("[%4ds] sent %d, delivered %d, delivery p50 %.0f us, p99 %.0f us, max %.0f us%n",
+                elapsedSeconds, chatMessagesSent.sum(), deliveries.sum(),
+                toMicros(delivery.getValueAtPercentile(50)), toMicros(delivery.getValueAtPercentile(99)), toMicros(delivery.getMaxValue()));
+    }
+
+    void printSummary(PrintStream out, double elapsedSeconds) {
+        long sent = chatMessagesSent.sum();
+        long ownReceived = ownMessagesReceived.sum();
+
+        out.println();
+        out.println("=== Load test summary ===");
+        out.printf("Duration:             %.1f s%n", elapsedSeconds);
+        out.printf("Chat messages sent:   %d (%.1f/s)%n", sent, sent / elapsedSeconds);
+        out.printf("Own messages echoed:  %d (%.2f%% of sent)%n", ownReceived, sent == 0 ? 0.0 : 100.0 * ownReceived / sent);
+        out.printf("Deliveries:           %d (%.1f/s)%n", deliveries.sum(), deliveries.sum() / elapsedSeconds);
+        out.printf("Reconnects:           %d%n", reconnects.sum());
+        out.printf("Unexpected closes:    %d%n", disconnects.sum());
+        out.printf("Throttled sends:      %d%n", throttled.sum());
+        out.printf("Errors:               %d%n", errors.sum());
+        out.println();
+        out.println("Latency (us)          count       p50       p90       p99     p99.9       max");
+        printHistogram(out, "delivery", totalDeliveryLatency);
+        printHistogram(out, "command", totalCommandLatency);
+        printHistogram(out, "connect", totalConnectLatency);
+        printHistogram(out, "reconnect", totalReconnectLatency);
+    }
+
+    private static void printHistogram(PrintStream out, String name, Histogram histogram) {
+        out.printf("%-18s %8d %9.0f %9.0f %9.0f %9.0f %9.0f%n", name, histogram.getTotalCount(),
+                toMicros(histogram.getValueAtPercentile(50)), toMicros(histogram.getValueAtPercentile(90)),
+                toMicros(histogram.getValueAtPercentile(99)), toMicros(histogram.getValueAtPercentile(99.9)),
+                toMicros(histogram.getMaxValue()));
+    }
+
+    private static double toMicros(long nanos) {
+        return nanos / 1000.0;
+    }
+}
@@ -0,0 +1,202 @@
+package com.company.loadtest;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One simulated chat user. It connects from its own loopback address, so the server treats every simulated client as
+ * a separate user, and reads everything the server sends on a virtual thread to record the latencies.
+ */
+class SimulatedClient {
+    static final String PROBE_MARKER = "lt#";
+
+    private static final String GREETING = "to get a list of all supported commands.";
+    private static final String USER_LIST = "<b>Currently connected: [";
+    private static final String NAME_CHANGED = "You've successfully changed your name.";
+    private static final String NAME_IN_USE = "Your wanted name is already in use.";
+
+    private final int id;
+    private final InetAddress localAddress;
+    private final InetSocketAddress serverAddress;
+    private final LoadStatistics statistics;
+    private final ReentrantLock writeLock;
+
+    private volatile Socket socket;
+    private volatile Writer writer;
+    private volatile String name;
+    private volatile String pendingName;
+    private volatile boolean reconnecting;
+    private volatile long connectStartNanos;
+    private volatile long userListSentNanos;
+    private volatile long setNameSentNanos;
+    private volatile long lastSendNanos;
+    private int renameCounter;
+
+    SimulatedClient(int id, InetAddress localAddress, InetSocketAddress serverAddress, LoadStatistics statistics) {
+        this.id = id;
+        this.localAddress = localAddress;
+        this.serverAddress = serverAddress;
+        this.statistics = statistics;
+
+        writeLock = new ReentrantLock();
+    }
+
+    String getName() {
+        return name;
+    }
+
+    boolean isConnected() {
+        return socket != null && name != null;
+    }
+
+    /**
+     * Returns true if the client may send again without running into the server's rate limit.
+     */
+    boolean canSend(long nowNanos, long minimumIntervalNanos) {
+        return isConnected() && pendingName == null && nowNanos - lastSendNanos >= minimumIntervalNanos;
+    }
+
+    void connect() throws IOException {
+        Socket socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.bind(new InetSocketAddress(localAddress, 0));
+
+        connectStartNanos = System.nanoTime();
+        socket.connect(serverAddress);
+
+        this.socket = socket;
+        writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+
+        Thread.ofVirtual().name("load-client-" + id).start(() -> read(socket));
+    }
+
+    void reconnect() throws IOException {
+        reconnecting = true;
+        statistics.reconnects.increment();
+
+        socket.close();
+        connect();
+    }
+
+    void sendChat(long nowNanos) throws IOException {
+        send(PROBE_MARKER + id + "#" + nowNanos + " chatting away at the office", nowNanos);
+        statistics.chatMessagesSent.increment();
+    }
+
+    void sendMention(String recipientName, long nowNanos) throws IOException {
+        send("@" + recipientName + " " + PROBE_MARKER + id + "#" + nowNanos + " have a look at this", nowNanos);
+        statistics.chatMessagesSent.increment();
+    }
+
+    void sendUserList(long nowNanos) throws IOException {
+        userListSentNanos = nowNanos;
+        send("\\userlist", nowNanos);
+    }
+
+    void sendSetName(long nowNanos) throws IOException {
+        setName("Load" + id + "r" + (renameCounter++ % 10), nowNanos);
+    }
+
+    private void setName(String newName, long nowNanos) throws IOException {
+        pendingName = newName;
+        setNameSentNanos = nowNanos;
+        send("\\setname " + newName, nowNanos);
+    }
+
+    private void send(String line, long nowNanos) throws IOException {
+        writeLock.lock();
+        try {
+            lastSendNanos = nowNanos;
+
+            writer.write(line);
+            writer.write('\n');
+            writer.flush();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // closing anyway
+        }
+    }
+
+    private void read(Socket socket) {
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                handleLine(line, System.nanoTime());
+            }
+        } catch (IOException e) {
+            // the connection was closed
+        }
+
+        if (socket == this.socket && !socket.isClosed()) {
+            statistics.disconnects.increment();
+        }
+    }
+
+    private void handleLine(String line, long nowNanos) throws IOException {
+        int probeIndex = line.indexOf(PROBE_MARKER);
+
+        if (probeIndex >= 0) {
+            handleProbe(line, probeIndex + PROBE_MARKER.length(), nowNanos);
+        } else if (line.endsWith(GREETING + "</b>")) {
+            if (reconnecting) {
+                reconnecting = false;
+                statistics.reconnectLatency.recordValue(nowNanos - connectStartNanos);
+                lastSendNanos = nowNanos;
+            } else {
+                statistics.connectLatency.recordValue(nowNanos - connectStartNanos);
+                setName("Load" + id, nowNanos);
+            }
+        } else if (line.startsWith(USER_LIST) && userListSentNanos != 0) {
+            statistics.commandLatency.recordValue(nowNanos - userListSentNanos);
+            userListSentNanos = 0;
+        } else if (line.equals(NAME_CHANGED) && pendingName != null) {
+            statistics.commandLatency.recordValue(nowNanos - setNameSentNanos);
+            name = pendingName;
+            pendingName = null;
+        } else if (line.equals(NAME_IN_USE) && pendingName != null) {
+            statistics.errors.increment();
+            pendingName = null;
+        }
+    }
+
+    private void handleProbe(String line, int start, long nowNanos) {
+        int idEnd = line.indexOf('#', start);
+
+        if (idEnd < 0) {
+            return;
+        }
+
+        int end = idEnd + 1;
+
+        while (end < line.length() && Character.isDigit(line.charAt(end))) {
+            end++;
+        }
+
+        long sentNanos = Long.parseLong(line.substring(idEnd + 1, end));
+
+        if (sentNanos < connectStartNanos) {
+            // replayed history from before this connection
+            return;
+        }
+
+        statistics.deliveryLatency.recordValue(Math.max(0, nowNanos - sentNanos));
+        statistics.deliveries.increment();
+
+        if (Integer.parseInt(line.substring(start, idEnd)) == id) {
+            statistics.ownMessagesReceived.increment();
+        }
+    }
+}
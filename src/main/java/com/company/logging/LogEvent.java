@@ -0,0 +1,65 @@
+package com.company.logging;
+
+/**
+ * One entry of the {@link ServerLog}. It only holds the parts of the line; formatting happens on the log's writer
+ * thread.
+ */
+class LogEvent {
+    private final long timeMillis;
+    private final Category category;
+    private final String userName;
+    private final String message;
+    private final Throwable throwable;
+
+    LogEvent(Category category, String userName, String message) {
+        this(category, userName, message, null);
+    }
+
+    LogEvent(Category category, String userName, String message, Throwable throwable) {
+        this.category = category;
+        this.userName = userName;
+        this.message = message;
+        this.throwable = throwable;
+
+        timeMillis = System.currentTimeMillis();
+    }
+
+    long getTimeMillis() {
+        return timeMillis;
+    }
+
+    Category getCategory() {
+        return category;
+    }
+
+    String getUserName() {
+        return userName;
+    }
+
+    String getMessage() {
+        return message;
+    }
+
+    /**
+     * Returns the exception whose stack trace follows the line, or null.
+     */
+    Throwable getThrowable() {
+        return throwable;
+    }
+
+    enum Category {
+        SERVER("[server]"),
+        CHAT("[chat]  "),
+        ERROR("[error] ");
+
+        private final String label;
+
+        Category(String label) {
+            this.label = label;
+        }
+
+        String getLabel() {
+            return label;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.company.logging;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends to a log file and rotates it once it exceeds the maximum size: "chat.log" becomes "chat.log.1", the former
+ * "chat.log.1" becomes "chat.log.2" and so on; the oldest file beyond maxFiles is deleted. Rotation only happens
+ * between two writes, so a batch of lines is never split across files. Not thread-safe, only the log's writer thread
+ * uses it.
+ */
+public class RotatingFileOutputStream extends OutputStream {
+    private final Path path;
+    private final long maxSize;
+    private final int maxFiles;
+
+    private OutputStream output;
+    private long size;
+
+    public RotatingFileOutputStream(Path path, long maxSize, int maxFiles) throws IOException {
+        this.path = path;
+        this.maxSize = maxSize;
+        this.maxFiles = Math.max(1, maxFiles);
+
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+
+        open();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        if (size > 0 && size + length > maxSize) {
+            rotate();
+        }
+
+        output.write(bytes, offset, length);
+        size += length;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+
+    private void open() throws IOException {
+        output = new BufferedOutputStream(Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND), 64 * 1024);
+        size = Files.size(path);
+    }
+
+    private void rotate() throws IOException {
+        output.close();
+
+        Files.deleteIfExists(rotatedPath(maxFiles));
+
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            if (Files.exists(rotatedPath(i))) {
+                Files.move(rotatedPath(i), rotatedPath(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        Files.move(path, rotatedPath(1), StandardCopyOption.REPLACE_EXISTING);
+
+        open();
+    }
+
+    private Path rotatedPath(int index) {
+        return path.resolveSibling(path.getFileName() + "." + index);
+    }
+}
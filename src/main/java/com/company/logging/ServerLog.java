@@ -0,0 +1,243 @@
+package com.company.logging;
+
+import com.company.metrics.ServerMetrics;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous server log. Logging only creates a small event and adds it to a lock-free queue; a dedicated thread
+ * formats the events and writes them in batches, either to standard output or to a size rotated file.
+ * <p>
+ * The queue is bounded. Once it is half full, chat lines are only sampled (every n-th one is kept); once it is full,
+ * every new event is dropped. Both are counted and reported in the log as soon as it has caught up again.
+ */
+public class ServerLog {
+    private static final int MAX_BATCH_SIZE = 512;
+    private static final long REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final Queue<LogEvent> events;
+    private final AtomicInteger depth;
+    private final int capacity;
+    private final int chatSampleRate;
+    private final AtomicLong chatCounter;
+    private final AtomicLong droppedEvents;
+    private final AtomicLong skippedChatLines;
+    private final ServerMetrics metrics;
+    private final RotatingFileOutputStream file;
+    private final Thread writerThread;
+
+    private volatile boolean isWriterWaiting;
+    private volatile boolean isRunning;
+
+    private long lastSecond = -1;
+    private String lastSecondText;
+
+    /**
+     * Creates a log that writes to standard output if file is null, otherwise to the (rotated) file.
+     */
+    public ServerLog(int capacity, int chatSampleRate, RotatingFileOutputStream file, ServerMetrics metrics) {
+        this.capacity = capacity;
+        this.chatSampleRate = Math.max(1, chatSampleRate);
+        this.file = file;
+        this.metrics = metrics;
+
+        events = new ConcurrentLinkedQueue<>();
+        depth = new AtomicInteger();
+        chatCounter = new AtomicLong();
+        droppedEvents = new AtomicLong();
+        skippedChatLines = new AtomicLong();
+
+        writerThread = new Thread(this::writeEvents, "chat-server-log");
+        writerThread.setDaemon(true);
+
+        isRunning = true;
+        writerThread.start();
+    }
+
+    public void info(String message) {
+        add(new LogEvent(LogEvent.Category.SERVER, null, message));
+    }
+
+    /**
+     * Logs an error with the stack trace of the exception. The stack trace is only formatted on the writer thread.
+     */
+    public void error(String message, Throwable throwable) {
+        add(new LogEvent(LogEvent.Category.ERROR, null, message, throwable));
+    }
+
+    /**
+     * Logs a chat line. Chat lines are the first thing that is sampled when the log can't keep up.
+     */
+    public void chat(String userName, String content) {
+        if (depth.get() >= capacity / 2 && chatCounter.incrementAndGet() % chatSampleRate != 0) {
+            skippedChatLines.incrementAndGet();
+            metrics.getLogEventsSkipped().increment();
+            return;
+        }
+
+        add(new LogEvent(LogEvent.Category.CHAT, userName, content));
+    }
+
+    /**
+     * Writes everything that is still queued and closes the log file.
+     */
+    public void close() {
+        isRunning = false;
+        LockSupport.unpark(writerThread);
+
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void add(LogEvent event) {
+        if (depth.incrementAndGet() > capacity) {
+            depth.decrementAndGet();
+            droppedEvents.incrementAndGet();
+            metrics.getLogEventsDropped().increment();
+            return;
+        }
+
+        events.add(event);
+
+        if (isWriterWaiting) {
+            LockSupport.unpark(writerThread);
+        }
+    }
+
+    private void writeEvents() {
+        StringBuilder batch = new StringBuilder(64 * 1024);
+        long lastReport = System.nanoTime();
+
+        while (true) {
+            LogEvent event = events.poll();
+
+            if (event == null) {
+                if (!isRunning) {
+                    break;
+                }
+
+                isWriterWaiting = true;
+
+                if (events.isEmpty()) {
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+                }
+
+                isWriterWaiting = false;
+                continue;
+            }
+
+            int batchSize = 0;
+
+            do {
+                depth.decrementAndGet();
+                format(event, batch);
+                batchSize++;
+            } while (batchSize < MAX_BATCH_SIZE && (event = events.poll()) != null);
+
+            long now = System.nanoTime();
+
+            if (now - lastReport >= REPORT_INTERVAL_NANOS) {
+                reportLosses(batch);
+                lastReport = now;
+            }
+
+            write(batch);
+            batch.setLength(0);
+        }
+
+        reportLosses(batch);
+        write(batch);
+
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void reportLosses(StringBuilder batch) {
+        long dropped = droppedEvents.getAndSet(0);
+        long skipped = skippedChatLines.getAndSet(0);
+
+        if (dropped > 0 || skipped > 0) {
+            format(new LogEvent(LogEvent.Category.SERVER, null, "The log couldn't keep up: dropped " + dropped
+                    + " events and skipped " + skipped + " chat lines."), batch);
+        }
+    }
+
+    private void format(LogEvent event, StringBuilder batch) {
+        long second = Math.floorDiv(event.getTimeMillis(), 1000);
+
+        if (second != lastSecond) {
+            lastSecond = second;
+            lastSecondText = LocalDateTime.ofInstant(Instant.ofEpochSecond(second), ZoneId.systemDefault()).format(TIME_FORMAT);
+        }
+
+        batch.append(lastSecondText).append('.');
+
+        long millis = Math.floorMod(event.getTimeMillis(), 1000);
+
+        if (millis < 100) {
+            batch.append('0');
+        }
+
+        if (millis < 10) {
+            batch.append('0');
+        }
+
+        batch.append(millis).append(' ').append(event.getCategory().getLabel()).append(' ');
+
+        if (event.getUserName() != null) {
+            batch.append(event.getUserName()).append(": ");
+        }
+
+        batch.append(event.getMessage()).append(System.lineSeparator());
+
+        if (event.getThrowable() != null) {
+            StringWriter stackTrace = new StringWriter();
+            event.getThrowable().printStackTrace(new PrintWriter(stackTrace));
+            batch.append(stackTrace);
+        }
+    }
+
+    private void write(StringBuilder batch) {
+        if (batch.length() == 0) {
+            return;
+        }
+
+        byte[] bytes = batch.toString().getBytes(StandardCharsets.UTF_8);
+
+        try {
+            if (file != null) {
+                file.write(bytes, 0, bytes.length);
+                file.flush();
+            } else {
+                PrintStream out = System.out;
+                out.write(bytes, 0, bytes.length);
+                out.flush();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
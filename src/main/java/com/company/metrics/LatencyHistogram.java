@@ -0,0 +1,109 @@
+package com.company.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of durations with fixed buckets from 1 µs to 10 s. Recording is a short scan over the bucket
+ * bounds and two {@link LongAdder} increments, so it can be used on hot paths from any thread.
+ */
+public class LatencyHistogram {
+    private static final long[] BUCKET_BOUNDS_NANOS = {
+            1_000, 5_000, 10_000, 50_000, 100_000, 250_000, 500_000,
+            1_000_000, 2_500_000, 5_000_000, 10_000_000, 25_000_000, 50_000_000, 100_000_000, 250_000_000, 500_000_000,
+            1_000_000_000L, 2_500_000_000L, 5_000_000_000L, 10_000_000_000L
+    };
+
+    private final LongAdder[] buckets;
+    private final LongAdder sumNanos;
+
+    public LatencyHistogram() {
+        buckets = new LongAdder[BUCKET_BOUNDS_NANOS.length + 1];
+
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+
+        sumNanos = new LongAdder();
+    }
+
+    public void record(long nanos) {
+        int index = 0;
+
+        while (index < BUCKET_BOUNDS_NANOS.length && nanos > BUCKET_BOUNDS_NANOS[index]) {
+            index++;
+        }
+
+        buckets[index].increment();
+        sumNanos.add(nanos);
+    }
+
+    /**
+     * Records the time that has passed since startNanos (a {@link System#nanoTime()} value).
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        long count = 0;
+
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+
+        return count;
+    }
+
+    public long getSumNanos() {
+        return sumNanos.sum();
+    }
+
+    /**
+     * Returns the number of recorded durations per bucket; the last bucket holds everything above 10 s.
+     */
+    public long[] getBucketCounts() {
+        long[] counts = new long[buckets.length];
+
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+        }
+
+        return counts;
+    }
+
+    /**
+     * Returns the upper bound of the bucket (in nanoseconds) or Long.MAX_VALUE for the last one.
+     */
+    public static long getBucketBoundNanos(int bucket) {
+        return bucket < BUCKET_BOUNDS_NANOS.length ? BUCKET_BOUNDS_NANOS[bucket] : Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns the upper bound of the bucket that contains the given quantile (0..1), or 0 if nothing was recorded.
+     */
+    public long getQuantileBoundNanos(double quantile) {
+        long[] counts = getBucketCounts();
+        long count = 0;
+
+        for (long bucketCount : counts) {
+            count += bucketCount;
+        }
+
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+
+            if (seen >= rank) {
+                return getBucketBoundNanos(i);
+            }
+        }
+
+        return Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,303 @@
+package com.company.metrics;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * All runtime metrics of the chat server. Counters are {@link LongAdder}s, so updating them from many threads at once
+ * costs next to nothing; they are only summed up when the metrics are read.
+ */
+public class ServerMetrics {
+    private final LongAdder connectionsAccepted;
+    private final LongAdder connectionsRejected;
+    private final LongAdder messagesIn;
+    private final LongAdder messagesOut;
+    private final LongAdder bytesWritten;
+    private final LongAdder outboundFramesDropped;
+    private final LongAdder spamRejections;
+    private final LongAdder canteenFetchFailures;
+    private final LongAdder logEventsDropped;
+    private final LongAdder logEventsSkipped;
+    private final LongAdder journalMessagesDropped;
+    private final LongAdder commandTimeouts;
+    private final LongAdder commandRejections;
+    private final LongAdder idlePings;
+    private final LongAdder idleSessionsReclaimed;
+    private final LatencyHistogram broadcastFanOut;
+    private final LatencyHistogram canteenFetch;
+    private final ConcurrentMap<String, LatencyHistogram> commandDurations;
+    private final LongSupplier activeConnections;
+    private final LongSupplier outboundQueueDepth;
+
+    public ServerMetrics(LongSupplier activeConnections, LongSupplier outboundQueueDepth) {
+        this.activeConnections = activeConnections;
+        this.outboundQueueDepth = outboundQueueDepth;
+
+        connectionsAccepted = new LongAdder();
+        connectionsRejected = new LongAdder();
+        messagesIn = new LongAdder();
+        messagesOut = new LongAdder();
+        bytesWritten = new LongAdder();
+        outboundFramesDropped = new LongAdder();
+        spamRejections = new LongAdder();
+        canteenFetchFailures = new LongAdder();
+        logEventsDropped = new LongAdder();
+        logEventsSkipped = new LongAdder();
+        journalMessagesDropped = new LongAdder();
+        commandTimeouts = new LongAdder();
+        commandRejections = new LongAdder();
+        idlePings = new LongAdder();
+        idleSessionsReclaimed = new LongAdder();
+        broadcastFanOut = new LatencyHistogram();
+        canteenFetch = new LatencyHistogram();
+        commandDurations = new ConcurrentHashMap<>();
+    }
+
+    public LongAdder getConnectionsAccepted() {
+        return connectionsAccepted;
+    }
+
+    /**
+     * Connections closed right after accepting because a connection cap was reached or the setup queue was full.
+     */
+    public LongAdder getConnectionsRejected() {
+        return connectionsRejected;
+    }
+
+    /**
+     * Lines received from clients.
+     */
+    public LongAdder getMessagesIn() {
+        return messagesIn;
+    }
+
+    /**
+     * Lines queued for clients.
+     */
+    public LongAdder getMessagesOut() {
+        return messagesOut;
+    }
+
+    public LongAdder getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Frames thrown away because a session's outbound queue was full, including the one a slow consumer was
+     * disconnected for.
+     */
+    public LongAdder getOutboundFramesDropped() {
+        return outboundFramesDropped;
+    }
+
+    public LongAdder getSpamRejections() {
+        return spamRejections;
+    }
+
+    public LongAdder getCanteenFetchFailures() {
+        return canteenFetchFailures;
+    }
+
+    /**
+     * Log events that were thrown away because the log's queue was full.
+     */
+    public LongAdder getLogEventsDropped() {
+        return logEventsDropped;
+    }
+
+    /**
+     * Chat lines that were not logged because the log was sampling them under pressure.
+     */
+    public LongAdder getLogEventsSkipped() {
+        return logEventsSkipped;
+    }
+
+    /**
+     * Messages that weren't journaled because the log overwrote them before the journal's writer got to them.
+     */
+    public LongAdder getJournalMessagesDropped() {
+        return journalMessagesDropped;
+    }
+
+    /**
+     * Commands that were cancelled because they ran longer than their timeout.
+     */
+    public LongAdder getCommandTimeouts() {
+        return commandTimeouts;
+    }
+
+    /**
+     * Commands that weren't executed because of a concurrency limit or a full command queue.
+     */
+    public LongAdder getCommandRejections() {
+        return commandRejections;
+    }
+
+    /**
+     * Pings sent to sessions that have been idle for the idle timeout.
+     */
+    public LongAdder getIdlePings() {
+        return idlePings;
+    }
+
+    /**
+     * Sessions that were closed and removed because they didn't answer a ping or their output stalled.
+     */
+    public LongAdder getIdleSessionsReclaimed() {
+        return idleSessionsReclaimed;
+    }
+
+    /**
+     * Time it takes to hand a new message or notice to every connected session.
+     */
+    public LatencyHistogram getBroadcastFanOut() {
+        return broadcastFanOut;
+    }
+
+    /**
+     * Time it takes to download and parse a canteen menu.
+     */
+    public LatencyHistogram getCanteenFetch() {
+        return canteenFetch;
+    }
+
+    public LatencyHistogram getCommandDuration(String command) {
+        return commandDurations.computeIfAbsent(command, name -> new LatencyHistogram());
+    }
+
+    /**
+     * Writes all metrics in the Prometheus text exposition format.
+     */
+    public void writePrometheus(StringBuilder out) {
+        writeGauge(out, "chat_connections_active", "Currently connected sessions.", activeConnections.getAsLong());
+        writeCounter(out, "chat_connections_accepted_total", "Connections accepted since the start.", connectionsAccepted.sum());
+        writeCounter(out, "chat_connections_rejected_total", "Connections rejected by the connection caps or a full setup queue.", connectionsRejected.sum());
+        writeCounter(out, "chat_messages_in_total", "Lines received from clients.", messagesIn.sum());
+        writeCounter(out, "chat_messages_out_total", "Lines queued for clients.", messagesOut.sum());
+        writeCounter(out, "chat_bytes_written_total", "Bytes written to client connections.", bytesWritten.sum());
+        writeGauge(out, "chat_outbound_queue_depth", "Frames waiting in the outbound queues of all sessions.", outboundQueueDepth.getAsLong());
+        writeCounter(out, "chat_outbound_frames_dropped_total", "Frames dropped because an outbound queue was full.", outboundFramesDropped.sum());
+        writeCounter(out, "chat_spam_rejections_total", "Lines rejected by the spam protection.", spamRejections.sum());
+        writeCounter(out, "chat_canteen_fetch_failures_total", "Canteen menu downloads that failed.", canteenFetchFailures.sum());
+        writeCounter(out, "chat_log_events_dropped_total", "Log events dropped because the log queue was full.", logEventsDropped.sum());
+        writeCounter(out, "chat_log_chat_lines_skipped_total", "Chat lines not logged while the log was sampling.", logEventsSkipped.sum());
+        writeCounter(out, "chat_journal_messages_dropped_total", "Messages not journaled because the journal fell too far behind.", journalMessagesDropped.sum());
+        writeCounter(out, "chat_command_timeouts_total", "Commands cancelled after their timeout.", commandTimeouts.sum());
+        writeCounter(out, "chat_command_rejections_total", "Commands not executed because of a concurrency limit or a full queue.", commandRejections.sum());
+        writeCounter(out, "chat_idle_pings_total", "Pings sent to idle sessions.", idlePings.sum());
+        writeCounter(out, "chat_idle_sessions_reclaimed_total", "Sessions closed because they didn't answer a ping or their output stalled.", idleSessionsReclaimed.sum());
+
+        writeHistogramHeader(out, "chat_broadcast_fanout_seconds", "Time to hand a message to all sessions.");
+        writeHistogram(out, "chat_broadcast_fanout_seconds", "", broadcastFanOut);
+
+        writeHistogramHeader(out, "chat_canteen_fetch_seconds", "Time to download and parse a canteen menu.");
+        writeHistogram(out, "chat_canteen_fetch_seconds", "", canteenFetch);
+
+        writeHistogramHeader(out, "chat_command_duration_seconds", "Execution time of chat commands.");
+
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(commandDurations).entrySet()) {
+            writeHistogram(out, "chat_command_duration_seconds", "command=\"" + entry.getKey() + "\",", entry.getValue());
+        }
+    }
+
+    /**
+     * Returns a short human readable overview, one line per metric group.
+     */
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder();
+
+        summary.append("connections: ").append(activeConnections.getAsLong()).append(" active, ")
+                .append(connectionsAccepted.sum()).append(" accepted, ").append(connectionsRejected.sum()).append(" rejected, ")
+                .append(idlePings.sum()).append(" pinged, ").append(idleSessionsReclaimed.sum()).append(" reclaimed as idle\n");
+        summary.append("messages: ").append(messagesIn.sum()).append(" in, ").append(messagesOut.sum()).append(" out, ")
+                .append(bytesWritten.sum()).append(" bytes written, ").append(spamRejections.sum()).append(" rejected as spam\n");
+        summary.append("outbound queues: ").append(outboundQueueDepth.getAsLong()).append(" frames pending, ")
+                .append(outboundFramesDropped.sum()).append(" dropped\n");
+        summary.append("broadcast fan-out: ").append(formatLatency(broadcastFanOut)).append('\n');
+        summary.append("canteen fetch: ").append(formatLatency(canteenFetch)).append(", ")
+                .append(canteenFetchFailures.sum()).append(" failed\n");
+        summary.append("log: ").append(logEventsDropped.sum()).append(" events dropped, ")
+                .append(logEventsSkipped.sum()).append(" chat lines skipped, ")
+                .append(journalMessagesDropped.sum()).append(" messages not journaled\n");
+        summary.append("commands: ").append(commandTimeouts.sum()).append(" timed out, ")
+                .append(commandRejections.sum()).append(" rejected");
+
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(commandDurations).entrySet()) {
+            summary.append("\ncommand ").append(entry.getKey()).append(": ").append(formatLatency(entry.getValue()));
+        }
+
+        return summary.toString();
+    }
+
+    private static String formatLatency(LatencyHistogram histogram) {
+        long count = histogram.getCount();
+
+        if (count == 0) {
+            return "no samples";
+        }
+
+        return count + " samples, mean " + formatNanos(histogram.getSumNanos() / count)
+                + ", p50 <= " + formatNanos(histogram.getQuantileBoundNanos(0.5))
+                + ", p99 <= " + formatNanos(histogram.getQuantileBoundNanos(0.99));
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos == Long.MAX_VALUE) {
+            return "inf";
+        } else if (nanos < 1_000_000) {
+            return nanos / 1_000 + " µs";
+        } else if (nanos < 1_000_000_000) {
+            return nanos / 1_000_000 + " ms";
+        }
+
+        return String.format("%.1f s", nanos / 1e9);
+    }
+
+    private static void writeCounter(StringBuilder out, String name, String help, long value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" counter\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void writeGauge(StringBuilder out, String name, String help, long value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" gauge\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void writeHistogramHeader(StringBuilder out, String name, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" histogram\n");
+    }
+
+    /**
+     * Writes the cumulative buckets, sum and count. The labels must be empty or end with a comma.
+     */
+    private static void writeHistogram(StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+        long[] counts = histogram.getBucketCounts();
+        long cumulativeCount = 0;
+
+        for (int i = 0; i < counts.length; i++) {
+            cumulativeCount += counts[i];
+
+            long bound = LatencyHistogram.getBucketBoundNanos(i);
+            String le = bound == Long.MAX_VALUE ? "+Inf" : toSeconds(bound);
+
+            out.append(name).append("_bucket{").append(labels).append("le=\"").append(le).append("\"} ").append(cumulativeCount).append('\n');
+        }
+
+        String plainLabels = labels.isEmpty() ? "" : "{" + labels.substring(0, labels.length() - 1) + "}";
+
+        out.append(name).append("_sum").append(plainLabels).append(' ').append(toSeconds(histogram.getSumNanos())).append('\n');
+        out.append(name).append("_count").append(plainLabels).append(' ').append(cumulativeCount).append('\n');
+    }
+
+    private static String toSeconds(long nanos) {
+        return BigDecimal.valueOf(nanos, 9).stripTrailingZeros().toPlainString();
+    }
+}
@@ -3,45 +3,99 @@ package com.company.poll;
 import com.company.User;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * A poll that many users can vote on at the same time. Every user votes once; the votes are indexed by voter in a
+ * concurrent map and counted per option in {@link LongAdder}s right away, so rendering the results only reads one
+ * counter per option.
+ */
 public class Poll {
-    private String title;
-    private User creator;
-    private List<String> options;
-    private List<Vote> votes;
+    private final int id;
+    private final String title;
+    private final User creator;
+    private final List<String> options;
+    private final ConcurrentMap<User, Vote> votes;
+    private final LongAdder[] optionCounts;
 
     public Poll(String title, User creator, List<String> options) {
+        this(0, title, creator, options);
+    }
+
+    public Poll(int id, String title, User creator, List<String> options) {
+        this.id = id;
         this.title = title;
         this.creator = creator;
-        this.options = options;
+        this.options = Collections.unmodifiableList(new ArrayList<>(options));
+
+        votes = new ConcurrentHashMap<>();
+        optionCounts = new LongAdder[options.size()];
 
-        votes = new ArrayList<>();
+        for (int i = 0; i < optionCounts.length; i++) {
+            optionCounts[i] = new LongAdder();
+        }
     }
 
+    /**
+     * Counts the vote. Returns false if the option doesn't exist or the voter has already voted.
+     */
     public boolean addVote(Vote vote) {
-        if(vote.getVotedOption() < 0 || vote.getVotedOption() >= options.size()) {
+        if (vote.getVotedOption() < 0 || vote.getVotedOption() >= options.size()) {
+            return false;
+        }
+
+        if (votes.putIfAbsent(vote.getVoter(), vote) != null) {
             return false;
         }
 
-        votes.add(vote);
+        optionCounts[vote.getVotedOption()].increment();
 
         return true;
     }
 
-    public List<Vote> getVotes() {
-        return votes;
+    public boolean hasVoted(User voter) {
+        return votes.containsKey(voter);
+    }
+
+    public Collection<Vote> getVotes() {
+        return Collections.unmodifiableCollection(votes.values());
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public User getCreator() {
+        return creator;
+    }
+
+    public List<String> getOptions() {
+        return options;
     }
 
     @Override
     public String toString() {
-        int numberOfVotes = votes.size();
+        long[] counts = new long[optionCounts.length];
+        long numberOfVotes = 0;
+
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = optionCounts[i].sum();
+            numberOfVotes += counts[i];
+        }
 
-        StringBuilder representation = new StringBuilder("Poll '" + title + "'\n");
+        StringBuilder representation = new StringBuilder("Poll '").append(title).append("'\n");
 
-        for(String option: options) {
-            long numberOfVotesForOption = votes.stream().filter(v -> v.getVotedOption() == options.indexOf(option)).count();
-            representation.append("\tOption '").append(option).append("': ").append(numberOfVotesForOption).append(" / ").append(numberOfVotes).append("\n");
+        for (int i = 0; i < counts.length; i++) {
+            representation.append("\tOption '").append(options.get(i)).append("': ").append(counts[i]).append(" / ").append(numberOfVotes).append("\n");
         }
 
         return representation.toString();
@@ -0,0 +1,49 @@
+package com.company.poll;
+
+import com.company.User;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * All running polls by their number. Only the latest polls are kept; creating one more drops the oldest.
+ */
+public class PollRegistry {
+    private final int maxPolls;
+    private final ConcurrentNavigableMap<Integer, Poll> polls;
+    private final AtomicInteger idCounter;
+
+    public PollRegistry(int maxPolls) {
+        this.maxPolls = Math.max(1, maxPolls);
+
+        polls = new ConcurrentSkipListMap<>();
+        idCounter = new AtomicInteger();
+    }
+
+    public Poll create(String title, User creator, List<String> options) {
+        Poll poll = new Poll(idCounter.incrementAndGet(), title, creator, options);
+        polls.put(poll.getId(), poll);
+
+        while (polls.size() > maxPolls) {
+            polls.pollFirstEntry();
+        }
+
+        return poll;
+    }
+
+    public Poll get(int id) {
+        return polls.get(id);
+    }
+
+    /**
+     * Returns the most recently created poll or null if there is none.
+     */
+    public Poll getLatest() {
+        Map.Entry<Integer, Poll> entry = polls.lastEntry();
+
+        return entry != null ? entry.getValue() : null;
+    }
+}
@@ -2,9 +2,9 @@ package com.company.poll;
 
 import com.company.User;
 
-class Vote {
-    private User voter;
-    private int votedOption;
+public class Vote {
+    private final User voter;
+    private final int votedOption;
 
     public Vote(User voter, int votedOption) {
         this.voter = voter;
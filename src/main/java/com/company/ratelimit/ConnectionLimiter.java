@@ -0,0 +1,76 @@
+package com.company.ratelimit;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Caps the number of open connections, both server-wide and per ip address. Every admitted connection has to be
+ * released exactly once when it is gone. A limit of 0 disables the respective cap.
+ */
+public class ConnectionLimiter {
+    private final int maxConnections;
+    private final int maxConnectionsPerIpAddress;
+    private final AtomicInteger connections;
+    private final ConcurrentMap<String, Integer> connectionsByIpAddress;
+
+    public ConnectionLimiter(int maxConnections, int maxConnectionsPerIpAddress) {
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerIpAddress = maxConnectionsPerIpAddress;
+
+        connections = new AtomicInteger();
+        connectionsByIpAddress = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Admits a new connection from the ip address. Returns false if one of the caps has been reached.
+     */
+    public boolean tryAcquire(String ipAddress) {
+        if (connections.incrementAndGet() > maxConnections && maxConnections > 0) {
+            connections.decrementAndGet();
+            return false;
+        }
+
+        boolean[] isAdmitted = {true};
+
+        connectionsByIpAddress.compute(ipAddress, (key, count) -> {
+            if (count == null) {
+                return 1;
+            }
+
+            if (maxConnectionsPerIpAddress > 0 && count >= maxConnectionsPerIpAddress) {
+                isAdmitted[0] = false;
+                return count;
+            }
+
+            return count + 1;
+        });
+
+        if (!isAdmitted[0]) {
+            connections.decrementAndGet();
+        }
+
+        return isAdmitted[0];
+    }
+
+    /**
+     * Releases a connection admitted by {@link #tryAcquire}. Releasing an address without admitted connections does
+     * nothing, so sessions that didn't come through an accepting transport are harmless.
+     */
+    public void release(String ipAddress) {
+        boolean[] isReleased = {false};
+
+        connectionsByIpAddress.computeIfPresent(ipAddress, (key, count) -> {
+            isReleased[0] = true;
+            return count > 1 ? count - 1 : null;
+        });
+
+        if (isReleased[0]) {
+            connections.decrementAndGet();
+        }
+    }
+
+    public int getNumberOfConnections() {
+        return connections.get();
+    }
+}
@@ -0,0 +1,69 @@
+package com.company.ratelimit;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Decides whether a received line is accepted. A line has to get a token from the session's bucket, from the bucket
+ * of the client's ip address (shared by all its connections) and from the server-wide bucket. A rate of 0 disables
+ * the respective bucket.
+ */
+public class RateLimiter {
+    private final int sessionRate;
+    private final int sessionBurst;
+    private final int ipAddressRate;
+    private final int ipAddressBurst;
+    private final TokenBucket globalBucket;
+    private final ConcurrentMap<String, TokenBucket> ipAddressBuckets;
+
+    public RateLimiter(int sessionRate, int sessionBurst, int ipAddressRate, int ipAddressBurst, int globalRate, int globalBurst) {
+        this.sessionRate = sessionRate;
+        this.sessionBurst = sessionBurst;
+        this.ipAddressRate = ipAddressRate;
+        this.ipAddressBurst = ipAddressBurst;
+
+        globalBucket = globalRate > 0 ? new TokenBucket(globalRate, globalBurst) : null;
+        ipAddressBuckets = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns a new bucket for a session or null if sessions aren't limited.
+     */
+    public TokenBucket createSessionBucket() {
+        return sessionRate > 0 ? new TokenBucket(sessionRate, sessionBurst) : null;
+    }
+
+    /**
+     * Takes a token from every bucket the line has to pass. Returns false as soon as one of them is empty.
+     */
+    public boolean tryAcquire(TokenBucket sessionBucket, String ipAddress) {
+        long now = System.nanoTime();
+
+        if (sessionBucket != null && !sessionBucket.tryAcquire(now)) {
+            return false;
+        }
+
+        if (ipAddressRate > 0) {
+            TokenBucket ipAddressBucket = ipAddressBuckets.get(ipAddress);
+
+            if (ipAddressBucket == null) {
+                ipAddressBucket = ipAddressBuckets.computeIfAbsent(ipAddress, key -> new TokenBucket(ipAddressRate, ipAddressBurst));
+            }
+
+            if (!ipAddressBucket.tryAcquire(now)) {
+                return false;
+            }
+        }
+
+        return globalBucket == null || globalBucket.tryAcquire(now);
+    }
+
+    /**
+     * Forgets the buckets of ip addresses that are full again, so the map doesn't grow with every address ever seen.
+     */
+    public void removeIdleBuckets() {
+        long now = System.nanoTime();
+
+        ipAddressBuckets.values().removeIf(bucket -> bucket.isFull(now));
+    }
+}
@@ -0,0 +1,55 @@
+package com.company.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket that refills at a fixed rate up to its burst size. Instead of a token count it stores the
+ * time at which the bucket will be full again (the generic cell rate algorithm), so taking a token is a single
+ * compare-and-set on a {@link System#nanoTime()} value and nothing ever has to be scheduled.
+ */
+public class TokenBucket {
+    private final long nanosPerToken;
+    private final long burstNanos;
+    private final AtomicLong fullAt;
+
+    /**
+     * Creates a bucket that allows ratePerSecond tokens per second on average and up to burst tokens at once.
+     */
+    public TokenBucket(double ratePerSecond, int burst) {
+        if (ratePerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("The rate and the burst must be positive.");
+        }
+
+        nanosPerToken = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond));
+        burstNanos = nanosPerToken * burst;
+        fullAt = new AtomicLong(Long.MIN_VALUE);
+    }
+
+    /**
+     * Takes a token if one is available at the given time (a {@link System#nanoTime()} value).
+     */
+    public boolean tryAcquire(long nowNanos) {
+        while (true) {
+            long current = fullAt.get();
+            long base = current == Long.MIN_VALUE || current - nowNanos < 0 ? nowNanos : current;
+            long next = base + nanosPerToken;
+
+            if (next - nowNanos > burstNanos) {
+                return false;
+            }
+
+            if (fullAt.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns true if the bucket is full at the given time, i.e. it doesn't remember anything worth keeping.
+     */
+    public boolean isFull(long nowNanos) {
+        long current = fullAt.get();
+        return current == Long.MIN_VALUE || current - nowNanos <= 0;
+    }
+}
@@ -0,0 +1,182 @@
+package com.company.search;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+/**
+ * The sequence numbers of all messages containing one token, in ascending order. They are stored in blocks of up to
+ * {@value #BLOCK_SIZE} entries; within a block every entry is the difference to the previous one as a variable length
+ * integer, so a typical posting takes one or two bytes. Old blocks are dropped as a whole once all of their messages
+ * are gone, and a {@link Cursor} only decodes the blocks it actually stops in.
+ * <p>
+ * Not thread-safe, {@link SearchIndex} guards it.
+ */
+class PostingList {
+    private static final int BLOCK_SIZE = 128;
+
+    private final Deque<Block> blocks;
+    private int size;
+
+    PostingList() {
+        blocks = new ArrayDeque<>();
+    }
+
+    /**
+     * Adds a sequence, which must be greater than all sequences added before.
+     */
+    void add(long sequence) {
+        Block block = blocks.peekLast();
+
+        if (block == null || block.count == BLOCK_SIZE) {
+            block = new Block(sequence);
+            blocks.addLast(block);
+        }
+
+        block.add(sequence);
+        size++;
+    }
+
+    /**
+     * Drops the blocks that only hold sequences below the oldest one that still exists.
+     */
+    void removeBefore(long oldestSequence) {
+        Block block;
+
+        while ((block = blocks.peekFirst()) != null && block.lastSequence < oldestSequence) {
+            blocks.removeFirst();
+            size -= block.count;
+        }
+    }
+
+    boolean isEmpty() {
+        return blocks.isEmpty();
+    }
+
+    /**
+     * Returns the number of postings, including some that may already be outdated.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns a cursor that walks the postings from the newest to the oldest.
+     */
+    Cursor newestFirst() {
+        return new Cursor(blocks.descendingIterator());
+    }
+
+    /**
+     * Moves backwards through the postings. Blocks that only hold sequences above the one sought are skipped without
+     * being decoded, which is what makes intersecting a rare with a common token cheap.
+     */
+    static class Cursor {
+        private final Iterator<Block> blocks;
+        private final long[] sequences;
+
+        private Block block;
+        private int index;
+
+        private Cursor(Iterator<Block> blocks) {
+            this.blocks = blocks;
+
+            sequences = new long[BLOCK_SIZE];
+        }
+
+        /**
+         * Moves to the newest posting at or below the sequence and returns it, or returns -1 if there is none.
+         */
+        long seek(long sequence) {
+            while (true) {
+                if (block == null) {
+                    if (!blocks.hasNext()) {
+                        return -1;
+                    }
+
+                    block = blocks.next();
+
+                    if (block.firstSequence > sequence) {
+                        block = null;
+                        continue;
+                    }
+
+                    index = block.decode(sequences) - 1;
+                }
+
+                while (index >= 0 && sequences[index] > sequence) {
+                    index--;
+                }
+
+                if (index >= 0) {
+                    return sequences[index];
+                }
+
+                block = null;
+            }
+        }
+    }
+
+    private static class Block {
+        private final long firstSequence;
+        private byte[] data;
+        private int length;
+        private int count;
+        private long lastSequence;
+
+        private Block(long firstSequence) {
+            this.firstSequence = firstSequence;
+
+            data = new byte[16];
+            lastSequence = firstSequence;
+        }
+
+        private void add(long sequence) {
+            long delta = sequence - lastSequence;
+
+            if (length + 10 > data.length) {
+                byte[] grown = new byte[data.length * 2];
+                System.arraycopy(data, 0, grown, 0, length);
+                data = grown;
+            }
+
+            while ((delta & ~0x7FL) != 0) {
+                data[length++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+
+            data[length++] = (byte) delta;
+
+            lastSequence = sequence;
+            count++;
+
+            if (count == BLOCK_SIZE && length < data.length) {
+                byte[] trimmed = new byte[length];
+                System.arraycopy(data, 0, trimmed, 0, length);
+                data = trimmed;
+            }
+        }
+
+        private int decode(long[] sequences) {
+            long sequence = firstSequence;
+            int position = 0;
+
+            for (int i = 0; i < count; i++) {
+                long delta = 0;
+                int shift = 0;
+                byte b;
+
+                do {
+                    b = data[position++];
+                    delta |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+
+                sequence += delta;
+                sequences[i] = sequence;
+            }
+
+            return count;
+        }
+    }
+}
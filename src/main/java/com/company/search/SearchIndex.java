@@ -0,0 +1,250 @@
+package com.company.search;
+
+import com.company.Message;
+import com.company.history.MessageLog;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Inverted index over the messages of one {@link MessageLog}: every token of a message's content and its author's
+ * name (as it was when the message was posted) maps to a {@link PostingList} of the sequence numbers containing it.
+ * The index covers exactly the messages the log still holds: postings of overwritten messages are dropped block by
+ * block, and a periodic sweep removes tokens without any postings left.
+ * <p>
+ * The index follows the log's published messages in sequence order, so every posting list is sorted. A search
+ * intersects the posting lists of all query tokens from the newest posting backwards, skipping whole blocks, and never
+ * looks at a message that doesn't match. Searches share a read lock; posters index under the write lock, but only if
+ * nobody else holds it, so posting never waits for a search.
+ */
+public class SearchIndex {
+    private static final int MIN_TOKEN_LENGTH = 2;
+    private static final int MAX_TOKEN_LENGTH = 32;
+
+    private final MessageLog messageLog;
+    private final Map<String, PostingList> postingLists;
+    private final ReadWriteLock lock;
+    private final int sweepInterval;
+
+    private long nextSequence;
+    private int addsSinceSweep;
+
+    /**
+     * Creates an index for the log. The messages the log already holds are indexed on the first update or search.
+     */
+    public SearchIndex(MessageLog messageLog) {
+        this.messageLog = messageLog;
+
+        postingLists = new HashMap<>();
+        lock = new ReentrantReadWriteLock();
+        sweepInterval = Math.max(1024, messageLog.getCapacity());
+    }
+
+    /**
+     * Indexes the messages that have been published to the log since the last update. Called after appending a
+     * message; if another thread is updating or searching right now, it returns immediately and the message is
+     * picked up by the next update or search.
+     */
+    public void update() {
+        if (!lock.writeLock().tryLock()) {
+            return;
+        }
+
+        try {
+            indexPublishedMessages();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the newest messages (at most maxResults) containing all tokens of the query, newest first.
+     */
+    public List<Message> search(String query, int maxResults) {
+        Set<String> queryTokens = new LinkedHashSet<>();
+        addTokens(query, queryTokens);
+
+        List<Message> results = new ArrayList<>();
+
+        if (queryTokens.isEmpty() || maxResults <= 0) {
+            return results;
+        }
+
+        long[] sequences = new long[maxResults];
+        int numberOfSequences = 0;
+
+        lock.writeLock().lock();
+
+        try {
+            indexPublishedMessages();
+
+            // downgraded, so other searches can run while this one walks the postings
+            lock.readLock().lock();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        try {
+            PostingList.Cursor[] cursors = getCursorsRarestFirst(queryTokens);
+
+            if (cursors != null) {
+                numberOfSequences = intersect(cursors, sequences);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        for (int i = 0; i < numberOfSequences; i++) {
+            Message message = messageLog.get(sequences[i]);
+
+            // postings are dropped block by block, so the oldest matches may already be gone from the log
+            if (message == null) {
+                break;
+            }
+
+            results.add(message);
+        }
+
+        return results;
+    }
+
+    /**
+     * Returns cursors for the tokens' posting lists, the shortest first, or null if a token doesn't occur at all.
+     */
+    private PostingList.Cursor[] getCursorsRarestFirst(Set<String> tokens) {
+        List<PostingList> matchingLists = new ArrayList<>();
+
+        for (String token : tokens) {
+            PostingList postingList = postingLists.get(token);
+
+            if (postingList == null) {
+                return null;
+            }
+
+            matchingLists.add(postingList);
+        }
+
+        matchingLists.sort((a, b) -> Integer.compare(a.size(), b.size()));
+
+        PostingList.Cursor[] cursors = new PostingList.Cursor[matchingLists.size()];
+
+        for (int i = 0; i < cursors.length; i++) {
+            cursors[i] = matchingLists.get(i).newestFirst();
+        }
+
+        return cursors;
+    }
+
+    /**
+     * Finds the newest sequences every cursor contains, newest first, until the array is full. Every cursor jumps to
+     * the newest candidate the others allow, so a round either confirms a match or lowers the candidate.
+     */
+    private static int intersect(PostingList.Cursor[] cursors, long[] sequences) {
+        int count = 0;
+        long candidate = Long.MAX_VALUE;
+
+        while (count < sequences.length) {
+            boolean isMatch = true;
+
+            for (PostingList.Cursor cursor : cursors) {
+                long sequence = cursor.seek(candidate);
+
+                if (sequence < 0) {
+                    return count;
+                }
+
+                if (sequence < candidate) {
+                    candidate = sequence;
+                    isMatch = false;
+                }
+            }
+
+            if (isMatch) {
+                sequences[count++] = candidate;
+                candidate--;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Indexes the published messages the index hasn't seen yet, in sequence order. Callers hold the write lock.
+     */
+    private void indexPublishedMessages() {
+        long oldestSequence = messageLog.getOldestSequence();
+        long publishedSequence = messageLog.getNextSequence();
+
+        for (nextSequence = Math.max(nextSequence, oldestSequence); nextSequence < publishedSequence; nextSequence++) {
+            Message message = messageLog.get(nextSequence);
+
+            if (message == null) {
+                continue;
+            }
+
+            for (String token : tokenize(message)) {
+                PostingList postingList = postingLists.computeIfAbsent(token, key -> new PostingList());
+
+                postingList.removeBefore(oldestSequence);
+                postingList.add(message.getSequence());
+            }
+
+            if (++addsSinceSweep >= sweepInterval) {
+                sweep(oldestSequence);
+                addsSinceSweep = 0;
+            }
+        }
+    }
+
+    private void sweep(long oldestSequence) {
+        Iterator<PostingList> iterator = postingLists.values().iterator();
+
+        while (iterator.hasNext()) {
+            PostingList postingList = iterator.next();
+            postingList.removeBefore(oldestSequence);
+
+            if (postingList.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static Set<String> tokenize(Message message) {
+        Set<String> tokens = new LinkedHashSet<>();
+
+        addTokens(message.getContent(), tokens);
+        addTokens(message.getAuthorName(), tokens);
+
+        return tokens;
+    }
+
+    /**
+     * Splits the text into lower-cased runs of letters and digits. Very short and very long runs are skipped.
+     */
+    private static void addTokens(String text, Set<String> tokens) {
+        int length = text.length();
+        int start = -1;
+
+        for (int i = 0; i <= length; i++) {
+            boolean isTokenCharacter = i < length && Character.isLetterOrDigit(text.charAt(i));
+
+            if (isTokenCharacter && start < 0) {
+                start = i;
+            } else if (!isTokenCharacter && start >= 0) {
+                if (i - start >= MIN_TOKEN_LENGTH && i - start <= MAX_TOKEN_LENGTH) {
+                    tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                }
+
+                start = -1;
+            }
+        }
+    }
+}
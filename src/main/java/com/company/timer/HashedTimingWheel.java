@@ -0,0 +1,239 @@
+package com.company.timer;
+
+import com.company.logging.ServerLog;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timing wheel: a ring of buckets, one per tick, served by a single thread. Scheduling and cancelling a timeout
+ * only add it to a lock-free queue, the thread moves it into (or out of) its bucket at the next tick, and every tick
+ * only looks at one bucket. Timeouts further away than one turn of the wheel stay in their bucket for the remaining
+ * number of rounds. Timeouts fire up to one tick late, which is fine for coarse timers like idle timeouts.
+ * <p>
+ * The tasks run on the wheel's thread, so they have to be short.
+ */
+public final class HashedTimingWheel {
+    private final long tickNanos;
+    private final Bucket[] buckets;
+    private final int mask;
+    private final Queue<Timeout> scheduledTimeouts;
+    private final Queue<Timeout> cancelledTimeouts;
+    private final long startNanos;
+    private final ServerLog log;
+    private final Thread thread;
+
+    private volatile boolean isRunning;
+
+    private long tick;
+
+    /**
+     * Creates and starts a wheel. The number of buckets is rounded up to a power of two.
+     */
+    public HashedTimingWheel(String name, long tickDuration, TimeUnit unit, int numberOfBuckets, ServerLog log) {
+        this.log = log;
+        tickNanos = Math.max(1, unit.toNanos(tickDuration));
+
+        int size = Integer.highestOneBit(Math.max(1, numberOfBuckets - 1)) << 1;
+        buckets = new Bucket[size];
+        mask = size - 1;
+
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new Bucket();
+        }
+
+        scheduledTimeouts = new ConcurrentLinkedQueue<>();
+        cancelledTimeouts = new ConcurrentLinkedQueue<>();
+        startNanos = System.nanoTime();
+
+        thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+
+        isRunning = true;
+        thread.start();
+    }
+
+    /**
+     * Runs the task on the wheel's thread once the delay has passed, unless the returned timeout is cancelled first.
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        Timeout timeout = new Timeout(this, task, System.nanoTime() - startNanos + unit.toNanos(delay));
+        scheduledTimeouts.add(timeout);
+
+        return timeout;
+    }
+
+    public void stop() {
+        isRunning = false;
+        LockSupport.unpark(thread);
+    }
+
+    private void run() {
+        while (isRunning) {
+            waitForNextTick();
+
+            removeCancelledTimeouts();
+            addScheduledTimeouts();
+
+            buckets[(int) (tick & mask)].expireTimeouts();
+            tick++;
+        }
+    }
+
+    private void waitForNextTick() {
+        long deadline = (tick + 1) * tickNanos;
+
+        while (isRunning) {
+            long remaining = deadline - (System.nanoTime() - startNanos);
+
+            if (remaining <= 0) {
+                return;
+            }
+
+            LockSupport.parkNanos(this, remaining);
+        }
+    }
+
+    private void removeCancelledTimeouts() {
+        Timeout timeout;
+
+        while ((timeout = cancelledTimeouts.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void addScheduledTimeouts() {
+        Timeout timeout;
+
+        while ((timeout = scheduledTimeouts.poll()) != null) {
+            if (timeout.state.get() != Timeout.PENDING) {
+                continue;
+            }
+
+            long expiryTick = timeout.deadlineNanos / tickNanos;
+            timeout.remainingRounds = (expiryTick - tick) / buckets.length;
+
+            buckets[(int) (Math.max(expiryTick, tick) & mask)].add(timeout);
+        }
+    }
+
+    public static class Timeout {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final HashedTimingWheel wheel;
+        private final Runnable task;
+        private final long deadlineNanos;
+        private final AtomicInteger state;
+
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout previous;
+        private Timeout next;
+
+        private Timeout(HashedTimingWheel wheel, Runnable task, long deadlineNanos) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+
+            state = new AtomicInteger(PENDING);
+        }
+
+        /**
+         * Cancels the timeout. Returns false if it had already expired or been cancelled.
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED)) {
+                return false;
+            }
+
+            wheel.cancelledTimeouts.add(this);
+
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(PENDING, EXPIRED)) {
+                return;
+            }
+
+            try {
+                task.run();
+            } catch (Exception e) {
+                wheel.log.error("A timeout's task failed.", e);
+            }
+        }
+    }
+
+    /**
+     * Doubly linked list of the timeouts of one tick, only touched by the wheel's thread.
+     */
+    private static class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(Timeout timeout) {
+            timeout.bucket = this;
+
+            if (head == null) {
+                head = timeout;
+                tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.previous = tail;
+                tail = timeout;
+            }
+        }
+
+        private void expireTimeouts() {
+            Timeout timeout = head;
+
+            while (timeout != null) {
+                Timeout next = timeout.next;
+
+                if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    timeout.expire();
+                } else if (timeout.isCancelled()) {
+                    remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+
+                timeout = next;
+            }
+        }
+
+        private void remove(Timeout timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+
+            if (timeout.previous != null) {
+                timeout.previous.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+
+            if (timeout.next != null) {
+                timeout.next.previous = timeout.previous;
+            } else {
+                tail = timeout.previous;
+            }
+
+            timeout.previous = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.company.transport;
+
+import com.company.ChatServer;
+import jdk.net.ExtendedSocketOptions;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the accepting thread free of anything slow. The accepting thread only asks the server to admit the connection
+ * and queues its setup (creating the handler, greeting it, announcing it); a few setup threads work through the queue.
+ * Connections that aren't admitted or don't fit into the queue are closed right away, and a setup that fails only
+ * closes its own connection.
+ * <p>
+ * Every accepted socket gets TCP keepalive with the configured timings instead of the system's (two hours on Linux),
+ * so a connection whose peer vanished fails its next read after a few minutes of silence, even if the client never
+ * sends anything on its own.
+ */
+public class AcceptPipeline {
+    private static final long ACCEPT_RETRY_DELAY_MILLIS = 50;
+
+    private final ChatServer chatServer;
+    private final ThreadPoolExecutor setupExecutor;
+    private final int keepAliveIdleSeconds;
+    private final int keepAliveIntervalSeconds;
+    private final int keepAliveProbes;
+
+    public AcceptPipeline(ChatServer chatServer, int threads, int queueCapacity, int keepAliveIdleSeconds, int keepAliveIntervalSeconds, int keepAliveProbes) {
+        this.chatServer = chatServer;
+        this.keepAliveIdleSeconds = keepAliveIdleSeconds;
+        this.keepAliveIntervalSeconds = keepAliveIntervalSeconds;
+        this.keepAliveProbes = keepAliveProbes;
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        setupExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "connection-setup-" + threadCounter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Admits the connection and queues its setup. Called on the accepting thread, returns without blocking.
+     */
+    void submit(InetAddress address, Closeable connection, Setup setup) {
+        if (!chatServer.admitConnection(address)) {
+            chatServer.getMetrics().getConnectionsRejected().increment();
+            closeQuietly(connection);
+            return;
+        }
+
+        try {
+            setupExecutor.execute(() -> {
+                try {
+                    setup.run();
+                } catch (Exception e) {
+                    chatServer.getLog().error("Couldn't set up the connection from " + address.getHostAddress() + ".", e);
+                    closeQuietly(connection);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            chatServer.releaseConnection(address);
+            chatServer.getMetrics().getConnectionsRejected().increment();
+            closeQuietly(connection);
+        }
+    }
+
+    /**
+     * Enables TCP keepalive on an accepted socket. The timings are only set where the platform supports them.
+     */
+    void enableKeepAlive(Socket socket) throws IOException {
+        socket.setKeepAlive(true);
+
+        setOptionIfSupported(socket, ExtendedSocketOptions.TCP_KEEPIDLE, keepAliveIdleSeconds);
+        setOptionIfSupported(socket, ExtendedSocketOptions.TCP_KEEPINTERVAL, keepAliveIntervalSeconds);
+        setOptionIfSupported(socket, ExtendedSocketOptions.TCP_KEEPCOUNT, keepAliveProbes);
+    }
+
+    private static void setOptionIfSupported(Socket socket, SocketOption<Integer> option, int value) throws IOException {
+        if (value > 0 && socket.supportedOptions().contains(option)) {
+            socket.setOption(option, value);
+        }
+    }
+
+    /**
+     * Called when accepting failed, e.g. because the process ran out of file descriptors. Pauses the accepting thread
+     * for a moment instead of spinning, then it goes on accepting.
+     */
+    void backOff(IOException e) {
+        chatServer.getLog().error("Couldn't accept a connection.", e);
+
+        try {
+            Thread.sleep(ACCEPT_RETRY_DELAY_MILLIS);
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void closeQuietly(Closeable connection) {
+        try {
+            connection.close();
+        } catch (IOException e) {
+            // the connection is gone either way
+        }
+    }
+
+    interface Setup {
+        void run() throws IOException;
+    }
+}
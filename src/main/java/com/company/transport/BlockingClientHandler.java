@@ -0,0 +1,148 @@
+package com.company.transport;
+
+import com.company.ChatServer;
+import com.company.ClientHandler;
+import com.company.OutboundQueue;
+import com.company.User;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Client handler that reads from its socket with blocking I/O on a dedicated thread. Its outbound queue is drained by
+ * a writer task on a separate executor, which writes all pending frames and flushes them once, so a stalled peer only
+ * ever blocks its own writer. The socket I/O is never guarded by a monitor, so the handler can run on a virtual thread
+ * without pinning its carrier thread while it blocks.
+ */
+public class BlockingClientHandler extends ClientHandler implements Runnable {
+    private static final int WRITE_BUFFER_SIZE = 16 * 1024;
+
+    private final Socket socket;
+    private final BufferedReader reader;
+    private final OutputStream output;
+    private final Executor writerExecutor;
+    private final AtomicBoolean flushScheduled;
+
+    private volatile boolean closeRequested = false;
+    private volatile boolean isWriting;
+
+    public BlockingClientHandler(ChatServer chatServer, Socket socket, Executor writerExecutor, User user) throws IOException {
+        super(chatServer, user);
+
+        this.socket = socket;
+        this.writerExecutor = writerExecutor;
+
+        reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        output = new BufferedOutputStream(socket.getOutputStream(), WRITE_BUFFER_SIZE);
+        flushScheduled = new AtomicBoolean();
+    }
+
+    @Override
+    public void run() {
+        String received;
+        boolean initialized = false;
+
+        while (isRunning()) {
+            try {
+                if (!initialized) {
+                    initialize();
+
+                    initialized = true;
+                }
+
+                received = reader.readLine();
+
+                if (received != null) {
+                    handleReceivedLine(received);
+                } else if (isRunning()) {
+                    handleDisconnect(null);
+                }
+            } catch (IOException e) {
+                if (isRunning()) {
+                    handleDisconnect(e);
+                }
+            } catch (Exception e) {
+                chatServer.getLog().error("Couldn't handle a line from '" + getUser().getName() + "'.", e);
+            }
+        }
+
+        close();
+    }
+
+    @Override
+    protected void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            writerExecutor.execute(this::flush);
+        }
+    }
+
+    /**
+     * Writes everything that is queued with a single flush. Only one flush runs at a time: the flag stays set while
+     * the writer is busy and is re-acquired if frames arrived between the last poll and releasing it.
+     */
+    private void flush() {
+        OutboundQueue outboundQueue = getOutboundQueue();
+
+        do {
+            isWriting = true;
+
+            try {
+                byte[] frame;
+
+                // recorded per frame, so a long flush to a slow but live client keeps showing progress; on a dead
+                // connection the write blocks as soon as the buffer is full
+                while ((frame = outboundQueue.poll()) != null) {
+                    output.write(frame);
+                    recordBytesWritten(frame.length);
+                }
+
+                output.flush();
+            } catch (IOException e) {
+                outboundQueue.clear();
+                closeRequested = true;
+            } finally {
+                isWriting = false;
+            }
+
+            if (closeRequested) {
+                closeSocket();
+            }
+
+            flushScheduled.set(false);
+        } while ((!outboundQueue.isEmpty() || closeRequested) && !socket.isClosed() && flushScheduled.compareAndSet(false, true));
+    }
+
+    @Override
+    public boolean hasPendingOutput() {
+        return isWriting || super.hasPendingOutput();
+    }
+
+    @Override
+    protected void close() {
+        closeRequested = true;
+
+        if (flushScheduled.compareAndSet(false, true)) {
+            writerExecutor.execute(this::flush);
+        }
+    }
+
+    @Override
+    protected void abort() {
+        closeRequested = true;
+        getOutboundQueue().clear();
+        closeSocket();
+    }
+
+    private void closeSocket() {
+        try {
+            socket.close();
+            output.close();
+            reader.close();
+        } catch (IOException e) {
+            // the socket is closed either way
+        }
+    }
+}
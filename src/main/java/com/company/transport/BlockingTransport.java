@@ -0,0 +1,60 @@
+package com.company.transport;
+
+import com.company.ChatServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Thread-per-connection transport: every client gets its own thread doing blocking reads. With virtual threads a
+ * connection costs a few kilobytes of heap instead of a platform thread's stack.
+ */
+public class BlockingTransport implements ITransport {
+    private final ThreadFactory threadFactory;
+    private final ExecutorService writerExecutor;
+    private final AcceptPipeline acceptPipeline;
+    private final int backlog;
+
+    public BlockingTransport(boolean useVirtualThreads, AcceptPipeline acceptPipeline, int backlog) {
+        this.acceptPipeline = acceptPipeline;
+        this.backlog = backlog;
+
+        if (useVirtualThreads) {
+            threadFactory = Thread.ofVirtual().name("client-handler-", 0).factory();
+            writerExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("client-writer-", 0).factory());
+        } else {
+            threadFactory = Thread.ofPlatform().name("client-handler-", 0).factory();
+            writerExecutor = Executors.newCachedThreadPool(Thread.ofPlatform().daemon().name("client-writer-", 0).factory());
+        }
+    }
+
+    @Override
+    public void start(ChatServer chatServer, int port) throws IOException {
+        ServerSocket server = new ServerSocket(port, backlog);
+
+        while (!server.isClosed()) {
+            Socket client;
+
+            try {
+                client = server.accept();
+            } catch (IOException e) {
+                acceptPipeline.backOff(e);
+                continue;
+            }
+
+            acceptPipeline.submit(client.getInetAddress(), client, () -> {
+                BlockingClientHandler clientHandler = chatServer.connectClient(client.getInetAddress(), user -> {
+                    acceptPipeline.enableKeepAlive(client);
+
+                    return new BlockingClientHandler(chatServer, client, writerExecutor, user);
+                });
+
+                threadFactory.newThread(clientHandler).start();
+            });
+        }
+    }
+}
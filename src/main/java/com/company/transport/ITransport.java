@@ -0,0 +1,14 @@
+package com.company.transport;
+
+import com.company.ChatServer;
+
+import java.io.IOException;
+
+/**
+ * Accepts client connections and drives their I/O. The transport hands every accepted connection to
+ * {@link ChatServer#connectClient} through an {@link AcceptPipeline} and keeps accepting until the server socket is
+ * closed; a failing connection never stops it.
+ */
+public interface ITransport {
+    void start(ChatServer chatServer, int port) throws IOException;
+}
@@ -0,0 +1,262 @@
+package com.company.transport;
+
+import com.company.ChatServer;
+import com.company.ClientHandler;
+import com.company.OutboundQueue;
+import com.company.User;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Client handler driven by a {@link NioEventLoop}. Lines are framed directly from the loop's shared read buffer; only
+ * an incomplete trailing line is copied into a per-client buffer, so idle clients hold no buffers at all.
+ */
+public class NioClientHandler extends ClientHandler {
+    private static final int MAXIMUM_LINE_LENGTH = 8 * 1024;
+    private static final int MAXIMUM_FRAMES_PER_WRITE = 64;
+
+    private final SocketChannel channel;
+    private final NioEventLoop eventLoop;
+    private final AtomicBoolean flushScheduled;
+
+    private SelectionKey selectionKey;
+    private byte[] partialLine;
+    private int partialLineLength;
+    private boolean discardingLine;
+    private ByteBuffer[] writeBuffers;
+    private int writeOffset;
+    private volatile boolean isWritePending;
+
+    NioClientHandler(ChatServer chatServer, SocketChannel channel, NioEventLoop eventLoop, User user) {
+        super(chatServer, user);
+
+        this.channel = channel;
+        this.eventLoop = eventLoop;
+
+        flushScheduled = new AtomicBoolean();
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    void registered(SelectionKey selectionKey) {
+        this.selectionKey = selectionKey;
+
+        initialize();
+        flush();
+    }
+
+    void handleRead(ByteBuffer readBuffer) {
+        int read;
+
+        readBuffer.clear();
+
+        try {
+            read = channel.read(readBuffer);
+        } catch (IOException e) {
+            disconnect(e);
+            return;
+        }
+
+        if (read < 0) {
+            disconnect(null);
+            return;
+        }
+
+        byte[] bytes = readBuffer.array();
+        int lineStart = 0;
+
+        for (int i = 0; i < read && isRunning(); i++) {
+            if (bytes[i] == '\n') {
+                handleLine(bytes, lineStart, i);
+                lineStart = i + 1;
+            }
+        }
+
+        if (lineStart < read && isRunning()) {
+            appendPartialLine(bytes, lineStart, read);
+        }
+    }
+
+    private void handleLine(byte[] bytes, int start, int end) {
+        if (discardingLine) {
+            discardingLine = false;
+            return;
+        }
+
+        String line;
+
+        if (partialLineLength > 0) {
+            appendPartialLine(bytes, start, end);
+
+            if (discardingLine) {
+                discardingLine = false;
+                return;
+            }
+
+            line = decodeLine(partialLine, 0, partialLineLength);
+            partialLine = null;
+            partialLineLength = 0;
+        } else {
+            line = decodeLine(bytes, start, end);
+        }
+
+        handleReceivedLine(line);
+    }
+
+    private void appendPartialLine(byte[] bytes, int start, int end) {
+        int length = end - start;
+
+        if (discardingLine) {
+            return;
+        }
+
+        if (partialLineLength + length > MAXIMUM_LINE_LENGTH) {
+            partialLine = null;
+            partialLineLength = 0;
+            discardingLine = true;
+            return;
+        }
+
+        if (partialLine == null) {
+            partialLine = new byte[Math.max(length, 128)];
+        } else if (partialLine.length < partialLineLength + length) {
+            partialLine = Arrays.copyOf(partialLine, Math.max(partialLineLength + length, partialLine.length * 2));
+        }
+
+        System.arraycopy(bytes, start, partialLine, partialLineLength, length);
+        partialLineLength += length;
+    }
+
+    private static String decodeLine(byte[] bytes, int start, int end) {
+        if (end > start && bytes[end - 1] == '\r') {
+            end--;
+        }
+
+        return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    protected void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            eventLoop.execute(this::flush);
+        }
+    }
+
+    /**
+     * Writes as much of the queued output as the socket accepts, coalescing up to {@value #MAXIMUM_FRAMES_PER_WRITE}
+     * frames into one gathering write, and waits for OP_WRITE for the rest. Must only be called on the event loop
+     * thread.
+     */
+    void flush() {
+        flushScheduled.set(false);
+
+        if (selectionKey == null || !selectionKey.isValid()) {
+            return;
+        }
+
+        OutboundQueue outboundQueue = getOutboundQueue();
+
+        try {
+            while (true) {
+                if (writeBuffers == null) {
+                    writeBuffers = pollFrames(outboundQueue);
+                    writeOffset = 0;
+
+                    if (writeBuffers == null) {
+                        break;
+                    }
+                }
+
+                recordBytesWritten(channel.write(writeBuffers, writeOffset, writeBuffers.length - writeOffset));
+
+                while (writeOffset < writeBuffers.length && !writeBuffers[writeOffset].hasRemaining()) {
+                    writeOffset++;
+                }
+
+                if (writeOffset < writeBuffers.length) {
+                    break;
+                }
+
+                writeBuffers = null;
+            }
+        } catch (IOException e) {
+            disconnect(e);
+            return;
+        }
+
+        isWritePending = writeBuffers != null;
+
+        if (writeBuffers == null) {
+            selectionKey.interestOps(SelectionKey.OP_READ);
+        } else {
+            selectionKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    private static ByteBuffer[] pollFrames(OutboundQueue outboundQueue) {
+        ByteBuffer[] buffers = null;
+        int count = 0;
+        byte[] frame;
+
+        while (count < MAXIMUM_FRAMES_PER_WRITE && (frame = outboundQueue.poll()) != null) {
+            if (buffers == null) {
+                buffers = new ByteBuffer[Math.min(MAXIMUM_FRAMES_PER_WRITE, outboundQueue.getDepth() + 1)];
+            } else if (count == buffers.length) {
+                buffers = Arrays.copyOf(buffers, Math.min(MAXIMUM_FRAMES_PER_WRITE, count * 2));
+            }
+
+            buffers[count++] = ByteBuffer.wrap(frame);
+        }
+
+        return buffers == null || count == buffers.length ? buffers : Arrays.copyOf(buffers, count);
+    }
+
+    @Override
+    public boolean hasPendingOutput() {
+        return isWritePending || super.hasPendingOutput();
+    }
+
+    void disconnect(IOException e) {
+        if (isRunning()) {
+            closeChannel();
+            handleDisconnect(e);
+        }
+    }
+
+    @Override
+    protected void close() {
+        eventLoop.execute(() -> {
+            flush();
+            closeChannel();
+        });
+    }
+
+    @Override
+    protected void abort() {
+        eventLoop.execute(this::closeChannel);
+    }
+
+    private void closeChannel() {
+        if (selectionKey != null) {
+            selectionKey.cancel();
+        }
+
+        getOutboundQueue().clear();
+        writeBuffers = null;
+        partialLine = null;
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            chatServer.getLog().error("Couldn't close the channel of '" + getUser().getName() + "'.", e);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.company.transport;
+
+import com.company.logging.ServerLog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Single threaded selector loop serving many {@link NioClientHandler}s. All channel operations of a handler happen on
+ * the loop thread; other threads hand work over through {@link #execute(Runnable)}.
+ */
+class NioEventLoop implements Runnable {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks;
+    private final AtomicBoolean wakeupPending;
+    private final ByteBuffer readBuffer;
+    private final ServerLog log;
+    private final Thread thread;
+
+    NioEventLoop(String name, ServerLog log) throws IOException {
+        this.log = log;
+
+        selector = Selector.open();
+        tasks = new ConcurrentLinkedQueue<>();
+        wakeupPending = new AtomicBoolean();
+        readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+        thread = new Thread(this, name);
+        thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void execute(Runnable task) {
+        tasks.add(task);
+
+        if (Thread.currentThread() != thread && wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    void register(NioClientHandler clientHandler) {
+        execute(() -> {
+            try {
+                SelectionKey selectionKey = clientHandler.getChannel().register(selector, SelectionKey.OP_READ, clientHandler);
+                clientHandler.registered(selectionKey);
+            } catch (ClosedChannelException e) {
+                clientHandler.disconnect(e);
+            }
+        });
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                if (tasks.isEmpty()) {
+                    selector.select();
+                } else {
+                    selector.selectNow();
+                }
+
+                wakeupPending.set(false);
+
+                Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    SelectionKey selectionKey = selectedKeys.next();
+                    selectedKeys.remove();
+
+                    NioClientHandler clientHandler = (NioClientHandler) selectionKey.attachment();
+
+                    if (selectionKey.isValid() && selectionKey.isReadable()) {
+                        clientHandler.handleRead(readBuffer);
+                    }
+
+                    if (selectionKey.isValid() && selectionKey.isWritable()) {
+                        clientHandler.flush();
+                    }
+                }
+
+                runTasks();
+            } catch (Exception e) {
+                log.error("The event loop '" + thread.getName() + "' failed to serve its channels.", e);
+            }
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                log.error("A task of the event loop '" + thread.getName() + "' failed.", e);
+            }
+        }
+    }
+}
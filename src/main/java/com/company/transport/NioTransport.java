@@ -0,0 +1,66 @@
+package com.company.transport;
+
+import com.company.ChatServer;
+import com.company.logging.ServerLog;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Non-blocking transport: accepted channels are spread round-robin over a small, fixed number of selector loops, so the
+ * number of threads does not grow with the number of connected clients.
+ */
+public class NioTransport implements ITransport {
+    private final NioEventLoop[] eventLoops;
+    private final AcceptPipeline acceptPipeline;
+    private final int backlog;
+    private int nextEventLoop = 0;
+
+    public NioTransport(int numberOfEventLoops, AcceptPipeline acceptPipeline, int backlog, ServerLog log) throws IOException {
+        this.acceptPipeline = acceptPipeline;
+        this.backlog = backlog;
+        eventLoops = new NioEventLoop[numberOfEventLoops];
+
+        for (int i = 0; i < numberOfEventLoops; i++) {
+            eventLoops[i] = new NioEventLoop("nio-event-loop-" + i, log);
+        }
+    }
+
+    @Override
+    public void start(ChatServer chatServer, int port) throws IOException {
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port), backlog);
+
+        for (NioEventLoop eventLoop : eventLoops) {
+            eventLoop.start();
+        }
+
+        while (server.isOpen()) {
+            SocketChannel client;
+
+            try {
+                client = server.accept();
+            } catch (IOException e) {
+                acceptPipeline.backOff(e);
+                continue;
+            }
+
+            NioEventLoop eventLoop = eventLoops[nextEventLoop];
+            nextEventLoop = (nextEventLoop + 1) % eventLoops.length;
+
+            acceptPipeline.submit(client.socket().getInetAddress(), client, () -> {
+                NioClientHandler clientHandler = chatServer.connectClient(client.socket().getInetAddress(), user -> {
+                    client.configureBlocking(false);
+                    client.socket().setTcpNoDelay(true);
+                    acceptPipeline.enableKeepAlive(client.socket());
+
+                    return new NioClientHandler(chatServer, client, eventLoop, user);
+                });
+
+                eventLoop.register(clientHandler);
+            });
+        }
+    }
+}